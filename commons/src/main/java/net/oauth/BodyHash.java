@@ -0,0 +1,237 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import net.oauth.signature.OAuthSignatureMethod;
+
+/**
+ * Utility methods for the oauth_body_hash parameter, as specified by the OAuth
+ * Request Body Hash extension. The hash is the base64 encoding of the SHA-1
+ * digest of the request body. It's computed by streaming the body through the
+ * digest, so the body is never held in memory.
+ * <p>
+ * A consumer should compute the hash of a body whose source can be read more
+ * than once (for example a file or byte array), add it to the request
+ * parameters, and then sign and send the request with a fresh stream from
+ * the source:
+ *
+ * <pre>
+ * parameters.add(new OAuth.Parameter(OAuth.OAUTH_BODY_HASH, BodyHash.hash(file)));
+ * accessor.newRequestMessage(&quot;PUT&quot;, url, parameters, new FileInputStream(file));
+ * </pre>
+ *
+ * A form-encoded body is covered by the signature already, so a request with
+ * a form-encoded body shouldn't have an oauth_body_hash. A service provider
+ * can check the body as it's read, using newVerifyingStream; and must call
+ * VerifyingInputStream.verify (or close) before acting on a body that it
+ * didn't read to the end.
+ */
+public class BodyHash {
+
+    public static final String ALGORITHM = "SHA-1";
+
+    /** Compute the hash of the given bytes. */
+    public static String hash(byte[] body) {
+        return hash(body, 0, body.length);
+    }
+
+    /** Compute the hash of body[offset, offset + length). */
+    public static String hash(byte[] body, int offset, int length) {
+        MessageDigest digest = newDigest();
+        digest.update(body, offset, length);
+        return OAuthSignatureMethod.base64Encode(digest.digest());
+    }
+
+    /** Compute the hash of the contents of the given file. */
+    public static String hash(File body) throws IOException {
+        InputStream in = new FileInputStream(body);
+        try {
+            return hash(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Compute the hash of the bytes from the given stream. The stream is read
+     * to the end, but not closed.
+     */
+    public static String hash(InputStream body) throws IOException {
+        MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (int n; (n = body.read(buffer)) >= 0;) {
+            digest.update(buffer, 0, n);
+        }
+        return OAuthSignatureMethod.base64Encode(digest.digest());
+    }
+
+    /**
+     * Construct a stream that reads the given body and checks it against the
+     * given hash. The body is checked when the end is reached, or verify or
+     * close is called; if its hash differs, that method throws a
+     * HashMismatchException. So the caller can process the body as it's
+     * read, but must read to the end, or call verify, before committing to
+     * the result.
+     */
+    public static VerifyingInputStream newVerifyingStream(InputStream body,
+            String expectedHash) {
+        return new VerifyingInputStream(body, expectedHash);
+    }
+
+    /**
+     * Signals that a body doesn't match its oauth_body_hash. The cause is an
+     * OAuthProblemException, with problem signature_invalid.
+     */
+    public static class HashMismatchException extends IOException {
+
+        HashMismatchException(OAuthProblemException cause) {
+            super(cause.getMessage());
+            initCause(cause);
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e + ""); // every Java runtime supports SHA-1
+        }
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * A stream that checks the body it reads against an oauth_body_hash. The
+     * check is made when the end of the body is reached, or verify or close
+     * is called, whichever happens first. Once the check has failed, each of
+     * those methods throws the same HashMismatchException again.
+     */
+    public static class VerifyingInputStream extends FilterInputStream {
+
+        VerifyingInputStream(InputStream in, String expectedHash) {
+            super(in);
+            this.expectedHash = expectedHash;
+        }
+
+        private final String expectedHash;
+
+        private final MessageDigest digest = newDigest();
+
+        private boolean verified = false;
+
+        private HashMismatchException failure = null;
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                verify();
+            } else {
+                digest.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n < 0) {
+                verify();
+            } else {
+                digest.update(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read the skipped bytes, so they're included in the hash.
+            final byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (r < 0) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        /** Verify the body (see verify), and then close the underlying stream. */
+        @Override
+        public void close() throws IOException {
+            try {
+                verify();
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Read the rest of the body (if any), and check its hash.
+         *
+         * @throws HashMismatchException
+         *             the body doesn't match the expected hash
+         */
+        public void verify() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (!verified) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (int n; (n = in.read(buffer)) >= 0;) {
+                    digest.update(buffer, 0, n);
+                }
+                String actual = OAuthSignatureMethod.base64Encode(digest.digest());
+                if (!OAuthSignatureMethod.equals(actual, expectedHash)) {
+                    OAuthProblemException problem = new OAuthProblemException(
+                            OAuth.Problems.SIGNATURE_INVALID);
+                    problem.setParameter(OAuth.OAUTH_BODY_HASH, expectedHash);
+                    problem.setParameter("oauth_body_hash_actual", actual);
+                    failure = new HashMismatchException(problem);
+                    throw failure;
+                }
+                verified = true;
+            }
+        }
+    }
+
+}
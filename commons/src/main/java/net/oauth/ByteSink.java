@@ -0,0 +1,258 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+/**
+ * A destination for bytes, which can percent-encode characters directly into
+ * bytes. Output accumulates in a ByteBuffer. By default the buffer is
+ * replaced with a bigger one when it fills up; the sinks constructed by
+ * newSink drain it to a stream or channel instead. Either way, no
+ * intermediate Strings or byte arrays are constructed.
+ * <p>
+ * A ByteSink isn't thread-safe, but it can be reused by calling clear.
+ */
+public class ByteSink {
+
+    /** Construct a sink that grows as needed, starting from a small buffer. */
+    public ByteSink() {
+        this(256);
+    }
+
+    /** Construct a sink that grows as needed, starting from the given capacity. */
+    public ByteSink(int capacity) {
+        this(ByteBuffer.allocate(capacity));
+    }
+
+    /**
+     * Construct a sink that writes into the given buffer, starting at its
+     * position. If the buffer fills up, it's copied into a bigger one, which
+     * is available from getBuffer.
+     */
+    public ByteSink(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** Bytes that have been written, from 0 to the buffer's position. */
+    protected ByteBuffer buffer;
+
+    /** The buffer that contains the bytes written so far, in write mode. */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /** The number of bytes in the buffer. */
+    public int size() {
+        return buffer.position();
+    }
+
+    /** Discard the bytes in the buffer, so it can be reused. */
+    public void clear() {
+        buffer.clear();
+    }
+
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            overflow(1);
+        }
+        buffer.put((byte) b);
+    }
+
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                overflow(len);
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Write the UTF-8 encoding of s, percentEncoded. */
+    public void writePercentEncoded(CharSequence s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        final int length = s.length();
+        for (int i = 0; i < length; ++i) {
+            if (buffer.remaining() < MAX_BYTES_PER_CHAR) {
+                overflow(MAX_BYTES_PER_CHAR);
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (OAuth.isUnreserved(c)) {
+                    buffer.put((byte) c);
+                } else {
+                    putEscape(c);
+                }
+            } else {
+                final int n = CharsetCodec.encodeUTF8(s, i, length, utf8, 0);
+                for (int b = 0; b < n; ++b) {
+                    putEscape(utf8[b]);
+                }
+                if (n == CharsetCodec.MAX_UTF8_BYTES) {
+                    ++i; // a surrogate pair
+                }
+            }
+        }
+    }
+
+    /** Scratch space for the UTF-8 encoding of one character. */
+    private final byte[] utf8 = new byte[CharsetCodec.MAX_UTF8_BYTES];
+
+    /**
+     * Write a form-urlencoded document containing the given sequence of
+     * name/value pairs, using OAuth percent encoding. The cached encoding of
+     * an EncodedParameter is copied as is.
+     */
+    public void writeFormEncoded(Iterable<? extends Map.Entry> parameters)
+            throws IOException {
+        if (parameters != null) {
+            boolean first = true;
+            for (Map.Entry parameter : parameters) {
+                if (first) {
+                    first = false;
+                } else {
+                    write('&');
+                }
+                if (parameter instanceof EncodedParameter) {
+                    EncodedParameter encoded = (EncodedParameter) parameter;
+                    write(encoded.getEncodedKey());
+                    write('=');
+                    write(encoded.getEncodedValue());
+                } else {
+                    writePercentEncoded(toString(parameter.getKey()));
+                    write('=');
+                    writePercentEncoded(toString(parameter.getValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write any buffered bytes to the underlying stream or channel. This
+     * doesn't flush the stream itself; so it's still possible (for example)
+     * to set HTTP response headers after draining into a servlet's output.
+     */
+    public void drain() throws IOException {
+    }
+
+    /** Copy the buffered bytes into the given stream. */
+    public void writeTo(OutputStream into) throws IOException {
+        if (buffer.hasArray()) {
+            into.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        } else {
+            into.write(toByteArray());
+        }
+    }
+
+    /** Construct a copy of the buffered bytes. */
+    public byte[] toByteArray() {
+        ByteBuffer from = (ByteBuffer) buffer.duplicate().flip();
+        byte[] into = new byte[from.remaining()];
+        from.get(into);
+        return into;
+    }
+
+    /** Construct a stream from which to read the buffered bytes, without copying them. */
+    public InputStream toInputStream() {
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset(), buffer.position());
+        }
+        return new ByteArrayInputStream(toByteArray());
+    }
+
+    @Override
+    public String toString() {
+        return OAuth.decodeCharacters(toByteArray());
+    }
+
+    /**
+     * Make room in the buffer for at least the given number of bytes; or for
+     * at least one byte if needed is greater than the buffer capacity.
+     */
+    protected void overflow(int needed) throws IOException {
+        int capacity = buffer.capacity();
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(capacity + needed, capacity * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    /** Construct a sink that drains into the given stream. */
+    public static ByteSink newSink(final OutputStream into) {
+        return new ByteSink(DRAIN_SIZE) {
+            @Override
+            public void drain() throws IOException {
+                writeTo(into);
+                clear();
+            }
+
+            @Override
+            protected void overflow(int needed) throws IOException {
+                drain();
+            }
+        };
+    }
+
+    /** Construct a sink that drains into the given channel. */
+    public static ByteSink newSink(final WritableByteChannel into) {
+        return new ByteSink(DRAIN_SIZE) {
+            @Override
+            public void drain() throws IOException {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    into.write(buffer);
+                }
+                clear();
+            }
+
+            @Override
+            protected void overflow(int needed) throws IOException {
+                drain();
+            }
+        };
+    }
+
+    private void putEscape(int b) {
+        buffer.put((byte) '%').put(HEX_DIGITS[(b >> 4) & 0xF]).put(HEX_DIGITS[b & 0xF]);
+    }
+
+    private static String toString(Object from) {
+        return (from == null) ? null : from.toString();
+    }
+
+    /** The most bytes that writePercentEncoded produces from one char. */
+    private static final int MAX_BYTES_PER_CHAR = 12; // a surrogate pair
+
+    private static final int DRAIN_SIZE = 1024;
+
+    private static final byte[] HEX_DIGITS = { '0', '1', '2', '3', '4', '5', '6', '7', '8',
+            '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+}
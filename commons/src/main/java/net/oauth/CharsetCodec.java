@@ -0,0 +1,324 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conversion between characters and bytes, using Charset objects instead of
+ * charset names. Charsets are looked up once and cached. UTF-8, ISO-8859-1
+ * and US-ASCII are converted directly into arrays of exactly the right size;
+ * other charsets use a CharsetEncoder or CharsetDecoder that's cached per
+ * thread.
+ * <p>
+ * Like String.getBytes and new String(byte[], String), malformed input and
+ * unmappable characters are replaced, not reported.
+ */
+public class CharsetCodec {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    public static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Get the Charset with the given name, from a cache.
+     *
+     * @throws java.nio.charset.IllegalCharsetNameException
+     * @throws java.nio.charset.UnsupportedCharsetException
+     */
+    public static Charset forName(String name) {
+        Charset charset = CHARSETS.get(name);
+        if (charset == null) {
+            charset = Charset.forName(name);
+            CHARSETS.put(name, charset);
+        }
+        return charset;
+    }
+
+    /** Encode the given characters. */
+    public static byte[] encode(CharSequence from, Charset charset) {
+        if (charset.equals(UTF_8)) {
+            byte[] into = new byte[utf8Length(from)];
+            encodeUTF8(from, into);
+            return into;
+        } else if (charset.equals(ISO_8859_1) || charset.equals(US_ASCII)) {
+            final int limit = charset.equals(US_ASCII) ? 0x80 : 0x100;
+            final int length = from.length();
+            byte[] into = new byte[length];
+            int n = 0;
+            for (int i = 0; i < length; ++i) {
+                char c = from.charAt(i);
+                if (c < limit) {
+                    into[n++] = (byte) c;
+                } else {
+                    into[n++] = '?';
+                    if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(from.charAt(i + 1))) {
+                        ++i; // one '?' for the whole code point
+                    }
+                }
+            }
+            if (n < length) {
+                byte[] shorter = new byte[n];
+                System.arraycopy(into, 0, shorter, 0, n);
+                return shorter;
+            }
+            return into;
+        }
+        ByteBuffer encoded = encode(from, charset, null);
+        if (encoded.arrayOffset() == 0 && encoded.position() == encoded.capacity()) {
+            return encoded.array();
+        }
+        byte[] into = new byte[encoded.position()];
+        System.arraycopy(encoded.array(), encoded.arrayOffset(), into, 0, into.length);
+        return into;
+    }
+
+    /**
+     * Encode the given characters into a buffer, starting at its position.
+     *
+     * @param into
+     *            the buffer; or null to allocate a new one
+     * @return into; or if it filled up, a bigger buffer that contains the
+     *         same bytes followed by the encoded characters.
+     */
+    public static ByteBuffer encode(CharSequence from, Charset charset, ByteBuffer into) {
+        CharsetEncoder encoder = getEncoder(charset);
+        CharBuffer in = CharBuffer.wrap(from);
+        if (into == null) {
+            into = ByteBuffer.allocate((int) Math.ceil(from.length()
+                    * (double) encoder.averageBytesPerChar()) + 1);
+        }
+        encoder.reset();
+        for (boolean flushing = false;;) {
+            CoderResult result = flushing ? encoder.flush(into) : encoder.encode(in, into, true);
+            if (result.isOverflow()) {
+                into = grow(into, (int) (in.remaining() * encoder.maxBytesPerChar()) + 1);
+            } else if (flushing) {
+                return into;
+            } else {
+                flushing = true;
+            }
+        }
+    }
+
+    /** Decode all the given bytes. */
+    public static String decode(byte[] from, Charset charset) {
+        return decode(from, 0, from.length, charset);
+    }
+
+    /** Decode bytes in the given range. */
+    public static String decode(byte[] from, int offset, int length, Charset charset) {
+        final boolean utf8 = charset.equals(UTF_8);
+        if (utf8 || charset.equals(ISO_8859_1) || charset.equals(US_ASCII)) {
+            char[] chars = new char[length];
+            int i = 0;
+            if (charset.equals(ISO_8859_1)) {
+                for (; i < length; ++i) {
+                    chars[i] = (char) (from[offset + i] & 0xFF);
+                }
+            } else {
+                for (; i < length && from[offset + i] >= 0; ++i) {
+                    chars[i] = (char) from[offset + i];
+                }
+            }
+            if (i >= length) {
+                return new String(chars);
+            }
+            if (!utf8) { // US-ASCII, containing a non-ASCII byte
+                for (; i < length; ++i) {
+                    byte b = from[offset + i];
+                    chars[i] = (b >= 0) ? (char) b : '\uFFFD';
+                }
+                return new String(chars);
+            }
+            // UTF-8, not all ASCII; a decoder will produce at most length chars:
+            CharBuffer out = CharBuffer.wrap(chars);
+            out.position(i);
+            decode(ByteBuffer.wrap(from, offset + i, length - i), charset, out);
+            return new String(chars, 0, out.position());
+        }
+        CharsetDecoder decoder = getDecoder(charset);
+        CharBuffer out = CharBuffer.allocate((int) Math.ceil(length
+                * (double) decoder.maxCharsPerByte()) + 1);
+        decode(ByteBuffer.wrap(from, offset, length), charset, out);
+        return new String(out.array(), out.arrayOffset(), out.position());
+    }
+
+    private static void decode(ByteBuffer in, Charset charset, CharBuffer out) {
+        CharsetDecoder decoder = getDecoder(charset);
+        try {
+            decoder.reset();
+            CoderResult result = decoder.decode(in, out, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = decoder.flush(out);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+        } catch (CharacterCodingException e) {
+            // The output was allocated big enough, and errors are replaced.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The number of bytes in the UTF-8 encoding of the given characters. */
+    static int utf8Length(CharSequence from) {
+        final int length = from.length();
+        int n = length;
+        for (int i = 0; i < length; ++i) {
+            char c = from.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    n += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(from.charAt(i + 1))) {
+                    n += 2; // 4 bytes for 2 chars
+                    ++i;
+                } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                    // replaced with '?'
+                } else {
+                    n += 2;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static void encodeUTF8(CharSequence from, byte[] into) {
+        final int length = from.length();
+        int n = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = from.charAt(i);
+            if (c < 0x80) {
+                into[n++] = (byte) c;
+            } else {
+                final int bytes = encodeUTF8(from, i, length, into, n);
+                n += bytes;
+                if (bytes == MAX_UTF8_BYTES) {
+                    ++i; // a surrogate pair
+                }
+            }
+        }
+    }
+
+    /** The most bytes that encodeUTF8 stores for one character. */
+    static final int MAX_UTF8_BYTES = 4;
+
+    /**
+     * Encode the character from[i] as UTF-8, into into[n, n + 4). If from[i]
+     * and from[i + 1] are a surrogate pair (and i + 1 < to), they're encoded
+     * together as 4 bytes; no other character is encoded as more than 3
+     * bytes. An unpaired surrogate can't be represented in UTF-8, so it's
+     * replaced with '?', like String.getBytes does. This is the one UTF-8
+     * encoder shared by encode, OAuth.percentEncode and ByteSink.
+     * 
+     * @return the number of bytes stored
+     */
+    static int encodeUTF8(CharSequence from, int i, int to, byte[] into, int n) {
+        final char c = from.charAt(i);
+        if (c < 0x80) {
+            into[n] = (byte) c;
+            return 1;
+        } else if (c < 0x800) {
+            into[n] = (byte) (0xC0 | (c >> 6));
+            into[n + 1] = (byte) (0x80 | (c & 0x3F));
+            return 2;
+        } else if (Character.isHighSurrogate(c) && i + 1 < to
+                && Character.isLowSurrogate(from.charAt(i + 1))) {
+            int p = Character.toCodePoint(c, from.charAt(i + 1));
+            into[n] = (byte) (0xF0 | (p >> 18));
+            into[n + 1] = (byte) (0x80 | ((p >> 12) & 0x3F));
+            into[n + 2] = (byte) (0x80 | ((p >> 6) & 0x3F));
+            into[n + 3] = (byte) (0x80 | (p & 0x3F));
+            return 4;
+        } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+            into[n] = '?';
+            return 1;
+        } else {
+            into[n] = (byte) (0xE0 | (c >> 12));
+            into[n + 1] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            into[n + 2] = (byte) (0x80 | (c & 0x3F));
+            return 3;
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer from, int needed) {
+        int capacity = from.capacity();
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(capacity + needed, capacity * 2));
+        from.flip();
+        bigger.put(from);
+        return bigger;
+    }
+
+    private static CharsetEncoder getEncoder(Charset charset) {
+        Map<Charset, CharsetEncoder> encoders = ENCODERS.get();
+        if (encoders == null) {
+            encoders = new HashMap<Charset, CharsetEncoder>();
+            ENCODERS.set(encoders);
+        }
+        CharsetEncoder encoder = encoders.get(charset);
+        if (encoder == null) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoders.put(charset, encoder);
+        }
+        return encoder;
+    }
+
+    private static CharsetDecoder getDecoder(Charset charset) {
+        Map<Charset, CharsetDecoder> decoders = DECODERS.get();
+        if (decoders == null) {
+            decoders = new HashMap<Charset, CharsetDecoder>();
+            DECODERS.set(decoders);
+        }
+        CharsetDecoder decoder = decoders.get(charset);
+        if (decoder == null) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.put(charset, decoder);
+        }
+        return decoder;
+    }
+
+    /*
+     * The coders of each thread. These are plain ThreadLocals, whose values
+     * contain only classes of the Java runtime; so a pooled thread in a
+     * servlet container doesn't keep this class (and the class loader of a
+     * web application that was undeployed) reachable.
+     */
+
+    private static final ThreadLocal<Map<Charset, CharsetEncoder>> ENCODERS = new ThreadLocal<Map<Charset, CharsetEncoder>>();
+
+    private static final ThreadLocal<Map<Charset, CharsetDecoder>> DECODERS = new ThreadLocal<Map<Charset, CharsetDecoder>>();
+
+    private static final Map<String, Charset> CHARSETS = new ConcurrentHashMap<String, Charset>();
+
+}
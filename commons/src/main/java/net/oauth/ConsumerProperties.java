@@ -20,9 +20,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * A pool of OAuthConsumers that are constructed from Properties. Each consumer
@@ -68,6 +71,24 @@ public class ConsumerProperties {
 
     private final Map<String, OAuthConsumer> pool = new HashMap<String, OAuthConsumer>();
 
+    /**
+     * Get the names of all the consumers, that is the names [name] of the
+     * properties named [name].consumerKey.
+     */
+    public Set<String> getConsumerNames() {
+        Set<String> names = new TreeSet<String>();
+        for (Object key : consumerProperties.keySet()) {
+            String propName = (String) key;
+            if (propName.endsWith(CONSUMER_KEY_SUFFIX)) {
+                names.add(propName.substring(0, propName.length()
+                        - CONSUMER_KEY_SUFFIX.length()));
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    private static final String CONSUMER_KEY_SUFFIX = ".consumerKey";
+
     /** Get the consumer with the given name. */
     public OAuthConsumer getConsumer(String name) throws MalformedURLException {
         OAuthConsumer consumer;
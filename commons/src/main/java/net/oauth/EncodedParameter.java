@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.util.Map;
+
+/**
+ * A name/value pair that remembers its percent encoding. The name and value
+ * are each encoded at most once, the first time the encoding is needed; and
+ * the same bytes are then used to sort the parameter into a signature base
+ * string, to construct an Authorization header and to construct a request
+ * body or query string.
+ * <p>
+ * The encoding is computed lazily and cached. It's safe to read an
+ * EncodedParameter from several threads, but not to call setValue
+ * concurrently with other methods.
+ */
+public class EncodedParameter implements Map.Entry<String, String> {
+
+    public EncodedParameter(String key, String value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Construct a parameter whose encoding is already known; for example
+     * because it was received in that form. The caller is responsible for
+     * ensuring that encodedKey and encodedValue are the percent encodings
+     * (in ASCII) of key and value, and for not modifying them subsequently.
+     * Either of them may be null, in which case it will be computed when
+     * needed.
+     */
+    public EncodedParameter(String key, String value, byte[] encodedKey,
+            byte[] encodedValue) {
+        this.key = key;
+        this.value = value;
+        this.encodedKey = encodedKey;
+        this.encodedValue = encodedValue;
+    }
+
+    /** Construct a copy of the given parameter, sharing its cached encoding. */
+    public EncodedParameter(EncodedParameter from) {
+        this(from.key, from.value, from.encodedKey, from.encodedValue);
+    }
+
+    /**
+     * Construct a parameter equivalent to the given entry; or return the
+     * entry itself if it's already an EncodedParameter.
+     */
+    public static EncodedParameter of(Map.Entry from) {
+        if (from instanceof EncodedParameter) {
+            return (EncodedParameter) from;
+        }
+        return new EncodedParameter(toString(from.getKey()), toString(from.getValue()));
+    }
+
+    private final String key;
+
+    private String value;
+
+    private volatile byte[] encodedKey;
+
+    private volatile byte[] encodedValue;
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String setValue(String value) {
+        try {
+            return this.value;
+        } finally {
+            this.value = value;
+            encodedValue = null;
+        }
+    }
+
+    /**
+     * The percent encoding of the key, in ASCII. The caller must not modify
+     * the array.
+     */
+    public byte[] getEncodedKey() {
+        byte[] encoded = encodedKey;
+        if (encoded == null) {
+            encodedKey = encoded = encode(key);
+        }
+        return encoded;
+    }
+
+    /**
+     * The percent encoding of the value, in ASCII. The caller must not modify
+     * the array.
+     */
+    public byte[] getEncodedValue() {
+        byte[] encoded = encodedValue;
+        if (encoded == null) {
+            encodedValue = encoded = encode(value);
+        }
+        return encoded;
+    }
+
+    /** Append the encoded key, '=' and the encoded value. */
+    public StringBuilder appendTo(StringBuilder into) {
+        appendASCII(getEncodedKey(), into).append('=');
+        return appendASCII(getEncodedValue(), into);
+    }
+
+    /** Append the encoded key. */
+    public StringBuilder appendEncodedKey(StringBuilder into) {
+        return appendASCII(getEncodedKey(), into);
+    }
+
+    /** Append the encoded value. */
+    public StringBuilder appendEncodedValue(StringBuilder into) {
+        return appendASCII(getEncodedValue(), into);
+    }
+
+    @Override
+    public String toString() {
+        byte[] k = getEncodedKey();
+        byte[] v = getEncodedValue();
+        return appendTo(new StringBuilder(k.length + 1 + v.length)).toString();
+    }
+
+    /** As specified by Map.Entry. */
+    @Override
+    public int hashCode() {
+        return ((key == null) ? 0 : key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
+    }
+
+    /**
+     * As specified by Map.Entry: true iff obj is a Map.Entry with an equal key
+     * and value; for example an OAuth.Parameter.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Map.Entry))
+            return false;
+        final Map.Entry that = (Map.Entry) obj;
+        return equals(key, that.getKey()) && equals(value, that.getValue());
+    }
+
+    /** Append the given ASCII bytes, one char per byte. */
+    private static StringBuilder appendASCII(byte[] from, StringBuilder into) {
+        for (int i = 0; i < from.length; ++i) {
+            into.append((char) from[i]);
+        }
+        return into;
+    }
+
+    private static byte[] encode(String s) {
+        String encoded = OAuth.percentEncode(s);
+        final int length = encoded.length();
+        byte[] into = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            into[i] = (byte) encoded.charAt(i);
+        }
+        return into;
+    }
+
+    private static boolean equals(String x, Object y) {
+        return (x == null) ? (y == null) : x.equals(y);
+    }
+
+    private static String toString(Object from) {
+        return (from == null) ? null : from.toString();
+    }
+
+}
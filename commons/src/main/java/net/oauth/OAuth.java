@@ -18,15 +18,19 @@ package net.oauth;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Miscellaneous constants, methods and types.
@@ -54,9 +58,11 @@ public class OAuth {
     public static final String OAUTH_CALLBACK = "oauth_callback";
     public static final String OAUTH_CALLBACK_CONFIRMED = "oauth_callback_confirmed";
     public static final String OAUTH_VERIFIER = "oauth_verifier";
+    public static final String OAUTH_BODY_HASH = "oauth_body_hash";
 
     public static final String HMAC_SHA1 = "HMAC-SHA1";
     public static final String RSA_SHA1 = "RSA-SHA1";
+    public static final String ED25519 = "Ed25519";
 
     /**
      * Strings used for <a href="http://wiki.oauth.net/ProblemReporting">problem
@@ -127,32 +133,35 @@ public class OAuth {
 
     }
 
-    private static String characterEncoding = ENCODING;
+    /** The charset of decodeCharacters and encodeCharacters, or null for the platform default. */
+    private static Charset characterSet = CharsetCodec.UTF_8;
 
+    /**
+     * Set the charset of decodeCharacters and encodeCharacters.
+     *
+     * @param encoding
+     *            the name of a charset, or null for the platform default
+     */
     public static void setCharacterEncoding(String encoding) {
-	OAuth.characterEncoding = encoding;
+        Charset charset = null;
+        if (encoding != null) {
+            try {
+                charset = CharsetCodec.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e + "");
+            }
+        }
+        OAuth.characterSet = charset;
     }
 
     public static String decodeCharacters(byte[] from) {
-	if (characterEncoding != null) {
-	    try {
-		return new String(from, characterEncoding);
-	    } catch (UnsupportedEncodingException e) {
-		System.err.println(e + "");
-	    }
-	}
-	return new String(from);
+        Charset charset = characterSet;
+        return (charset != null) ? CharsetCodec.decode(from, charset) : new String(from);
     }
 
     public static byte[] encodeCharacters(String from) {
-	if (characterEncoding != null) {
-	    try {
-		return from.getBytes(characterEncoding);
-	    } catch (UnsupportedEncodingException e) {
-		System.err.println(e + "");
-	    }
-	}
-	return from.getBytes();
+        Charset charset = characterSet;
+        return (charset != null) ? CharsetCodec.encode(from, charset) : from.getBytes();
     }
 
     /** Return true if the given Content-Type header means FORM_ENCODED. */
@@ -174,9 +183,21 @@ public class OAuth {
      */
     public static String formEncode(Iterable<? extends Map.Entry> parameters)
             throws IOException {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        formEncode(parameters, b);
-        return decodeCharacters(b.toByteArray());
+        StringBuilder into = new StringBuilder();
+        if (parameters != null) {
+            for (Map.Entry parameter : parameters) {
+                if (into.length() > 0) {
+                    into.append('&');
+                }
+                if (parameter instanceof EncodedParameter) {
+                    ((EncodedParameter) parameter).appendTo(into);
+                } else {
+                    percentEncode(toString(parameter.getKey()), into).append('=');
+                    percentEncode(toString(parameter.getValue()), into);
+                }
+            }
+        }
+        return into.toString();
     }
 
     /**
@@ -185,42 +206,365 @@ public class OAuth {
      */
     public static void formEncode(Iterable<? extends Map.Entry> parameters,
             OutputStream into) throws IOException {
-        if (parameters != null) {
-            boolean first = true;
-            for (Map.Entry parameter : parameters) {
-                if (first) {
-                    first = false;
-                } else {
-                    into.write('&');
+        ByteSink sink = ByteSink.newSink(into);
+        sink.writeFormEncoded(parameters);
+        sink.drain();
+    }
+
+    /**
+     * Write a form-urlencoded document into the given channel, containing the
+     * given sequence of name/value pairs.
+     */
+    public static void formEncode(Iterable<? extends Map.Entry> parameters,
+            WritableByteChannel into) throws IOException {
+        ByteSink sink = ByteSink.newSink(into);
+        sink.writeFormEncoded(parameters);
+        sink.drain();
+    }
+
+    /**
+     * Put a form-urlencoded document into the given buffer, containing the
+     * given sequence of name/value pairs.
+     * 
+     * @return the given buffer; or if it filled up, a bigger buffer that
+     *         contains the same bytes followed by the document.
+     */
+    public static ByteBuffer formEncode(Iterable<? extends Map.Entry> parameters,
+            ByteBuffer into) throws IOException {
+        ByteSink sink = new ByteSink(into);
+        sink.writeFormEncoded(parameters);
+        return sink.getBuffer();
+    }
+
+    /** Parse a form-urlencoded document. */
+    public static List<Parameter> decodeForm(String form) {
+        return decodeForm((CharSequence) form);
+    }
+
+    /**
+     * Parse a form-urlencoded document. The document is scanned once, and
+     * names and values that contain no escapes are copied without decoding.
+     */
+    public static List<Parameter> decodeForm(CharSequence form) {
+        List<Parameter> list = new ArrayList<Parameter>();
+        if (form != null) {
+            final int length = form.length();
+            int start = 0;
+            int equals = -1;
+            int emptySegments = 0;
+            for (int i = 0; i <= length; ++i) {
+                char c = (i < length) ? form.charAt(i) : '&';
+                if (c == '&') {
+                    if (i == start) {
+                        // Like String.split, ignore trailing empty segments.
+                        ++emptySegments;
+                    } else {
+                        for (; emptySegments > 0; --emptySegments) {
+                            list.add(new Parameter("", null));
+                        }
+                        String name;
+                        String value;
+                        if (equals < 0) {
+                            name = decodePercent(form, start, i);
+                            value = null;
+                        } else {
+                            name = decodePercent(form, start, equals);
+                            value = decodePercent(form, equals + 1, i);
+                        }
+                        list.add(new Parameter(name, value));
+                    }
+                    start = i + 1;
+                    equals = -1;
+                } else if (c == '=' && equals < 0) {
+                    equals = i;
                 }
-                into.write(encodeCharacters(percentEncode(toString(parameter.getKey()))));
-                into.write('=');
-                into.write(encodeCharacters(percentEncode(toString(parameter.getValue()))));
             }
         }
+        return list;
     }
 
-    /** Parse a form-urlencoded document. */
-    public static List<Parameter> decodeForm(String form) {
+    /** Parse a form-urlencoded document, encoded as bytes. */
+    public static List<Parameter> decodeForm(byte[] form, int offset, int length) {
         List<Parameter> list = new ArrayList<Parameter>();
-        if (!isEmpty(form)) {
-            for (String nvp : form.split("\\&")) {
-                int equals = nvp.indexOf('=');
-                String name;
-                String value;
-                if (equals < 0) {
-                    name = decodePercent(nvp);
-                    value = null;
+        if (form != null) {
+            final int end = offset + length;
+            byte[] scratch = null;
+            int emptySegments = 0;
+            for (int start = offset; start <= end;) {
+                int i = indexOf(form, start, end, AMPERSANDS, AMPERSANDS);
+                if (i == start) {
+                    // Like String.split, ignore trailing empty segments.
+                    ++emptySegments;
                 } else {
-                    name = decodePercent(nvp.substring(0, equals));
-                    value = decodePercent(nvp.substring(equals + 1));
+                    for (; emptySegments > 0; --emptySegments) {
+                        list.add(new Parameter("", null));
+                    }
+                    if (scratch == null) {
+                        scratch = new byte[length];
+                    }
+                    int equals = indexOf(form, start, i, EQUALSES, EQUALSES);
+                    String name;
+                    String value;
+                    if (equals >= i) {
+                        name = decodePercent(form, start, i, scratch);
+                        value = null;
+                    } else {
+                        name = decodePercent(form, start, equals, scratch);
+                        value = decodePercent(form, equals + 1, i, scratch);
+                    }
+                    list.add(new Parameter(name, value));
+                }
+                start = i + 1;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Parse a form-urlencoded document from the given stream, encoded as
+     * UTF-8. The stream isn't closed.
+     * 
+     * @param maxLength
+     *            the maximum number of bytes to read
+     * @throws FormTooLongException
+     *             the document is longer than maxLength
+     * @throws IOException
+     *             the document couldn't be read
+     */
+    public static List<Parameter> decodeForm(InputStream form, long maxLength)
+            throws IOException {
+        return decodeForm(form, ENCODING, maxLength);
+    }
+
+    /**
+     * Parse a form-urlencoded document from the given stream, which is read in
+     * chunks. Characters that aren't percent-encoded are decoded with the
+     * given charset, like decodeForm(String) of the document decoded with
+     * that charset. If the charset is a superset of US-ASCII with one byte
+     * per character, or UTF-8, each parameter is decoded as soon as its last
+     * byte is read, so no copy of the whole document is constructed.
+     * Otherwise, the document is read into memory and decoded as a String.
+     * White space at the beginning and end of the document is ignored. The
+     * stream isn't closed.
+     * 
+     * @param charset
+     *            the name of the document's charset; for example the charset
+     *            parameter of its Content-Type. Null means UTF-8.
+     * @param maxLength
+     *            the maximum number of bytes to read
+     * @throws FormTooLongException
+     *             the document is longer than maxLength
+     * @throws IOException
+     *             the document couldn't be read, or the charset isn't
+     *             supported
+     */
+    public static List<Parameter> decodeForm(InputStream form, String charset,
+            long maxLength) throws IOException {
+        List<Parameter> list = new ArrayList<Parameter>();
+        if (form == null) {
+            return list;
+        }
+        final Charset characters;
+        try {
+            characters = (charset == null) ? CharsetCodec.UTF_8 : CharsetCodec.forName(charset);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        if (!isASCIICompatible(characters)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[512];
+            for (int n; 0 < (n = form.read(chunk));) {
+                if (bytes.size() + n > maxLength) {
+                    throw new FormTooLongException(maxLength);
                 }
-                list.add(new Parameter(name, value));
+                bytes.write(chunk, 0, n);
             }
+            return decodeForm(CharsetCodec.decode(bytes.toByteArray(), characters).trim());
+        }
+        byte[] chunk = new byte[512];
+        byte[] token = new byte[64];
+        byte[] scratch = new byte[token.length];
+        int tokenLength = 0;
+        int equals = -1;
+        int emptySegments = 0;
+        boolean started = false;
+        long total = 0;
+        for (int n; 0 < (n = form.read(chunk));) {
+            total += n;
+            if (total > maxLength) {
+                throw new FormTooLongException(maxLength);
+            }
+            int c = 0;
+            if (!started) {
+                while (c < n && (chunk[c] & 0xFF) <= ' ') {
+                    ++c; // leading white space
+                }
+                started = (c < n);
+            }
+            while (c < n) {
+                // Copy everything up to the next '&' into the token:
+                final int amp = indexOf(chunk, c, n, AMPERSANDS, AMPERSANDS);
+                final int run = amp - c;
+                if (run > 0) {
+                    if (tokenLength + run > token.length) {
+                        int size = token.length * 2;
+                        while (size < tokenLength + run) {
+                            size *= 2;
+                        }
+                        byte[] bigger = new byte[size];
+                        System.arraycopy(token, 0, bigger, 0, tokenLength);
+                        token = bigger;
+                        scratch = new byte[bigger.length];
+                    }
+                    if (equals < 0) {
+                        int e = indexOf(chunk, c, amp, EQUALSES, EQUALSES);
+                        if (e < amp) {
+                            equals = tokenLength + (e - c);
+                        }
+                    }
+                    System.arraycopy(chunk, c, token, tokenLength, run);
+                    tokenLength += run;
+                }
+                if (amp < n) {
+                    if (tokenLength <= 0) {
+                        ++emptySegments;
+                    } else {
+                        for (; emptySegments > 0; --emptySegments) {
+                            list.add(new Parameter("", null));
+                        }
+                        list.add(decodeParameter(token, tokenLength, equals, scratch, characters));
+                    }
+                    tokenLength = 0;
+                    equals = -1;
+                }
+                c = amp + 1;
+            }
+        }
+        while (tokenLength > 0 && (token[tokenLength - 1] & 0xFF) <= ' ') {
+            --tokenLength; // trailing white space
+        }
+        if (tokenLength > 0) {
+            for (; emptySegments > 0; --emptySegments) {
+                list.add(new Parameter("", null));
+            }
+            list.add(decodeParameter(token, tokenLength, equals, scratch, characters));
         }
         return list;
     }
 
+    private static Parameter decodeParameter(byte[] token, int length, int equals,
+            byte[] scratch, Charset charset) {
+        if (!charset.equals(CharsetCodec.UTF_8) && !isASCII(token, length)) {
+            // The charset has one byte per character, so equals is also an
+            // index into the decoded characters.
+            String s = CharsetCodec.decode(token, 0, length, charset);
+            if (equals < 0) {
+                return new Parameter(decodePercent(s), null);
+            }
+            return new Parameter(decodePercent(s.substring(0, equals)),
+                    decodePercent(s.substring(equals + 1)));
+        }
+        if (equals < 0) {
+            return new Parameter(decodePercent(token, 0, length, scratch), null);
+        }
+        return new Parameter(decodePercent(token, 0, equals, scratch),
+                decodePercent(token, equals + 1, length, scratch));
+    }
+
+    /**
+     * Whether the given charset is UTF-8, or encodes each character as one
+     * byte and US-ASCII characters as US-ASCII does. In such a charset, the
+     * bytes of '&amp;', '=', '%', '+' and white space represent only those
+     * characters. The answer for each charset other than UTF-8, ISO-8859-1
+     * and US-ASCII is computed once and remembered.
+     */
+    private static boolean isASCIICompatible(Charset charset) {
+        if (charset.equals(CharsetCodec.UTF_8) || charset.equals(CharsetCodec.ISO_8859_1)
+                || charset.equals(CharsetCodec.US_ASCII)) {
+            return true;
+        }
+        Boolean compatible = ASCII_COMPATIBLE.get(charset);
+        if (compatible == null) {
+            compatible = Boolean.valueOf(charset.canEncode()
+                    && charset.newEncoder().maxBytesPerChar() == 1
+                    && Arrays.equals(ASCII_BYTES, CharsetCodec.encode(ASCII_CHARACTERS, charset)));
+            ASCII_COMPATIBLE.put(charset, compatible);
+        }
+        return compatible.booleanValue();
+    }
+
+    private static final Map<Charset, Boolean> ASCII_COMPATIBLE = new ConcurrentHashMap<Charset, Boolean>();
+
+    private static final byte[] ASCII_BYTES = new byte[128];
+
+    private static final String ASCII_CHARACTERS;
+    static {
+        char[] characters = new char[ASCII_BYTES.length];
+        for (int c = 0; c < characters.length; ++c) {
+            ASCII_BYTES[c] = (byte) c;
+            characters[c] = (char) c;
+        }
+        ASCII_CHARACTERS = new String(characters);
+    }
+
+    /**
+     * Signals that a form-urlencoded document is longer than the limit given
+     * to decodeForm. It's an IOException, so it can be thrown by methods that
+     * read a message body, such as OAuthMessage.getParameters; getProblem
+     * describes it as an OAuthProblemException.
+     */
+    public static class FormTooLongException extends IOException {
+
+        /** The oauth_problem of getProblem(). */
+        public static final String PROBLEM = "form_too_long";
+
+        /** The parameter of getProblem() whose value is the limit. */
+        public static final String MAX_FORM_LENGTH = "oauth_max_form_length";
+
+        public FormTooLongException(long maxLength) {
+            super("form is longer than " + maxLength + " bytes");
+            this.maxLength = maxLength;
+        }
+
+        private final long maxLength;
+
+        /** The limit that was exceeded, in bytes. */
+        public long getMaxLength() {
+            return maxLength;
+        }
+
+        /**
+         * Describe this as an OAuthProblemException, with problem
+         * form_too_long and parameter oauth_max_form_length.
+         */
+        public OAuthProblemException getProblem() {
+            OAuthProblemException problem = new OAuthProblemException(PROBLEM);
+            problem.setParameter(MAX_FORM_LENGTH, Long.toString(maxLength));
+            problem.initCause(this);
+            return problem;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    /**
+     * Parse a form-urlencoded document, from the given buffer's position to
+     * its limit. The buffer's position is not changed. (This method isn't
+     * named decodeForm, so decodeForm(null) remains unambiguous.)
+     */
+    public static List<Parameter> decodeFormBytes(ByteBuffer form) {
+        if (form == null) {
+            return new ArrayList<Parameter>();
+        }
+        if (form.hasArray()) {
+            return decodeForm(form.array(), form.arrayOffset() + form.position(), form.remaining());
+        }
+        byte[] copy = new byte[form.remaining()];
+        form.duplicate().get(copy);
+        return decodeForm(copy, 0, copy.length);
+    }
+
     /** Construct a &-separated list of the given values, percentEncoded. */
     public static String percentEncode(Iterable values) {
         StringBuilder p = new StringBuilder();
@@ -228,33 +572,363 @@ public class OAuth {
             if (p.length() > 0) {
                 p.append("&");
             }
-            p.append(OAuth.percentEncode(toString(v)));
+            percentEncode(toString(v), p);
         }
         return p.toString();
     }
 
+    /**
+     * Encode the given string as specified by <a
+     * href="http://tools.ietf.org/html/rfc3986#section-2.1">RFC 3986</a>: each
+     * character is represented as UTF-8, and each byte that's not unreserved
+     * is replaced by '%' and two upper case hexadecimal digits.
+     * 
+     * @return the encoded string, which is s itself if no character needs to
+     *         be encoded, or "" if s is null.
+     */
     public static String percentEncode(String s) {
         if (s == null) {
             return "";
         }
+        final int length = s.length();
+        int i = indexOfReserved(s, 0, length);
+        if (i >= length) {
+            return s; // nothing to encode
+        }
+        StringBuilder into = new StringBuilder(length + 16);
+        into.append(s, 0, i);
+        percentEncode(s, i, length, into);
+        return into.toString();
+    }
+
+    /**
+     * Append the percentEncoded form of the given characters.
+     * 
+     * @return into
+     */
+    public static StringBuilder percentEncode(CharSequence s, StringBuilder into) {
+        if (s != null) {
+            percentEncode(s, 0, s.length(), into);
+        }
+        return into;
+    }
+
+    /**
+     * Append the percentEncoded form of the given characters.
+     * 
+     * @return into
+     */
+    public static Appendable percentEncode(CharSequence s, Appendable into)
+            throws IOException {
+        if (s != null) {
+            percentEncode(s, 0, s.length(), into);
+        }
+        return into;
+    }
+
+    private static void percentEncode(CharSequence s, int from, int to, StringBuilder into) {
         try {
-            return URLEncoder.encode(s, ENCODING)
-                    // OAuth encodes some characters differently:
-                    .replace("+", "%20").replace("*", "%2A")
-                    .replace("%7E", "~");
-            // This could be done faster with more hand-crafted code.
-        } catch (UnsupportedEncodingException wow) {
+            percentEncode(s, from, to, (Appendable) into);
+        } catch (IOException wow) {
             throw new RuntimeException(wow.getMessage(), wow);
         }
     }
 
+    private static void percentEncode(CharSequence s, int from, int to, Appendable into)
+            throws IOException {
+        byte[] utf8 = null;
+        for (int i = from; i < to; ++i) {
+            int run = indexOfReserved(s, i, to);
+            if (run > i) {
+                into.append(s, i, run); // unreserved characters
+                if (run >= to) {
+                    break;
+                }
+                i = run;
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                appendEscape(c, into);
+            } else {
+                if (utf8 == null) {
+                    utf8 = new byte[CharsetCodec.MAX_UTF8_BYTES];
+                }
+                final int n = CharsetCodec.encodeUTF8(s, i, to, utf8, 0);
+                for (int b = 0; b < n; ++b) {
+                    appendEscape(utf8[b], into);
+                }
+                if (n == CharsetCodec.MAX_UTF8_BYTES) {
+                    ++i; // a surrogate pair
+                }
+            }
+        }
+    }
+
+    private static void appendEscape(int b, Appendable into) throws IOException {
+        into.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Find the first character in s[from, to) that isn't unreserved.
+     * Characters are examined eight at a time, with one branch per group.
+     * 
+     * @return the index of that character, or to if there is none
+     */
+    private static int indexOfReserved(CharSequence s, int from, int to) {
+        final boolean[] u = UNRESERVED;
+        int i = from;
+        for (final int last = to - 8; i <= last; i += 8) {
+            char c0 = s.charAt(i), c1 = s.charAt(i + 1), c2 = s.charAt(i + 2), c3 = s.charAt(i + 3);
+            char c4 = s.charAt(i + 4), c5 = s.charAt(i + 5), c6 = s.charAt(i + 6), c7 = s.charAt(i + 7);
+            if ((c0 | c1 | c2 | c3 | c4 | c5 | c6 | c7) >= 0x80
+                    || !(u[c0] & u[c1] & u[c2] & u[c3] & u[c4] & u[c5] & u[c6] & u[c7])) {
+                break;
+            }
+        }
+        for (; i < to; ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x80 || !u[c]) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /** Return true if c is an <a href="http://tools.ietf.org/html/rfc3986#section-2.3">unreserved</a> character. */
+    static boolean isUnreserved(char c) {
+        return c < 0x100 && UNRESERVED[c];
+    }
+
+    /** Unreserved characters, indexed by their value. */
+    private static final boolean[] UNRESERVED = new boolean[0x100];
+    static {
+        for (char c = 'A'; c <= 'Z'; ++c) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; ++c) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; ++c) {
+            UNRESERVED[c] = true;
+        }
+        for (char c : "-._~".toCharArray()) {
+            UNRESERVED[c] = true;
+        }
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** The values of hexadecimal digits (in either case), or -1 for other ASCII characters. */
+    private static final byte[] HEX_VALUE = new byte[0x80];
+    static {
+        Arrays.fill(HEX_VALUE, (byte) -1);
+        for (int d = 0; d < 16; ++d) {
+            HEX_VALUE[HEX_DIGITS[d]] = (byte) d;
+            HEX_VALUE[Character.toLowerCase(HEX_DIGITS[d])] = (byte) d;
+        }
+    }
+
+    /**
+     * Decode the given percentEncoded string. A '+' is decoded as a space,
+     * as in HTML forms; this implements <a
+     * href="http://oauth.pbwiki.com/FlexibleDecoding">flexible decoding</a>.
+     * 
+     * @return the decoded string, which is s itself if it contains no '%' or
+     *         '+'.
+     * @throws IllegalArgumentException
+     *             s contains an invalid escape
+     */
     public static String decodePercent(String s) {
-        try {
-            return URLDecoder.decode(s, ENCODING);
-            // This implements http://oauth.pbwiki.com/FlexibleDecoding
-        } catch (java.io.UnsupportedEncodingException wow) {
-            throw new RuntimeException(wow.getMessage(), wow);
+        if (s == null) {
+            return null;
+        }
+        return decodePercent(s, 0, s.length());
+    }
+
+    /** Decode the characters of s in the range [from, to). */
+    private static String decodePercent(CharSequence s, int from, int to) {
+        int i = indexOfEscape(s, from, to);
+        if (i >= to) { // nothing to decode
+            return (from == 0 && to == s.length()) ? s.toString() : s.subSequence(from, to).toString();
+        }
+        StringBuilder into = new StringBuilder(to - from);
+        into.append(s, from, i);
+        byte[] bytes = null;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                into.append(' ');
+                ++i;
+            } else if (c == '%') {
+                // Decode a sequence of escapes together, since they
+                // may represent a multi-byte character.
+                if (bytes == null) {
+                    bytes = new byte[(to - i) / 3];
+                }
+                int n = 0;
+                boolean ascii = true;
+                for (; i < to && s.charAt(i) == '%'; i += 3) {
+                    if (i + 2 >= to) {
+                        throw new IllegalArgumentException(
+                                "Incomplete trailing escape (%) pattern");
+                    }
+                    int b = (hexValue(s.charAt(i + 1)) << 4) | hexValue(s.charAt(i + 2));
+                    ascii &= (b < 0x80);
+                    bytes[n++] = (byte) b;
+                }
+                appendBytes(bytes, n, ascii, into);
+            } else {
+                into.append(c);
+                ++i;
+            }
         }
+        return into.toString();
+    }
+
+    /**
+     * Decode the bytes in the range [from, to), using scratch (which must be
+     * big enough to hold them) to collect the unescaped bytes.
+     */
+    private static String decodePercent(byte[] s, int from, int to, byte[] scratch) {
+        int i = indexOf(s, from, to, PERCENTS, PLUSES);
+        if (i >= to) { // nothing to decode
+            return CharsetCodec.decode(s, from, to - from, CharsetCodec.UTF_8);
+        }
+        int n = i - from;
+        System.arraycopy(s, from, scratch, 0, n);
+        boolean ascii = isASCII(scratch, n);
+        for (; i < to; ++i) {
+            int b = s[i];
+            if (b == '+') {
+                b = ' ';
+            } else if (b == '%') {
+                if (i + 2 >= to) {
+                    throw new IllegalArgumentException(
+                            "Incomplete trailing escape (%) pattern");
+                }
+                b = (hexValue((char) s[i + 1]) << 4) | hexValue((char) s[i + 2]);
+                i += 2;
+            }
+            ascii &= ((b & 0x80) == 0);
+            scratch[n++] = (byte) b;
+        }
+        StringBuilder into = new StringBuilder(n);
+        appendBytes(scratch, n, ascii, into);
+        return into.toString();
+    }
+
+    /**
+     * Find the first '%' or '+' in s[from, to). Characters are examined eight
+     * at a time, with one branch per group.
+     * 
+     * @return the index of that character, or to if there is none
+     */
+    private static int indexOfEscape(CharSequence s, int from, int to) {
+        int i = from;
+        for (final int last = to - 8; i <= last; i += 8) {
+            char c0 = s.charAt(i), c1 = s.charAt(i + 1), c2 = s.charAt(i + 2), c3 = s.charAt(i + 3);
+            char c4 = s.charAt(i + 4), c5 = s.charAt(i + 5), c6 = s.charAt(i + 6), c7 = s.charAt(i + 7);
+            if ((c0 == '%' | c0 == '+') | (c1 == '%' | c1 == '+') | (c2 == '%' | c2 == '+')
+                    | (c3 == '%' | c3 == '+') | (c4 == '%' | c4 == '+') | (c5 == '%' | c5 == '+')
+                    | (c6 == '%' | c6 == '+') | (c7 == '%' | c7 == '+')) {
+                break;
+            }
+        }
+        for (; i < to; ++i) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Find the first byte in s[from, to) that matches either of the given
+     * patterns, each of which is one byte value repeated eight times. Eight
+     * bytes are examined at a time, as one long (SWAR).
+     * 
+     * @return the index of that byte, or to if there is none
+     */
+    private static int indexOf(byte[] s, int from, int to, long pattern1, long pattern2) {
+        int i = from;
+        if (to - from >= 8) {
+            ByteBuffer words = ByteBuffer.wrap(s); // big-endian
+            for (final int last = to - 8; i <= last; i += 8) {
+                long word = words.getLong(i);
+                long found = zeroBytes(word ^ pattern1) | zeroBytes(word ^ pattern2);
+                if (found != 0) {
+                    return i + (Long.numberOfLeadingZeros(found) >>> 3);
+                }
+            }
+        }
+        final byte b1 = (byte) pattern1;
+        final byte b2 = (byte) pattern2;
+        for (; i < to; ++i) {
+            if (s[i] == b1 || s[i] == b2) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Set the high bit of each byte of x that's zero, and clear all the other
+     * bits. Unlike the common approximation, this is exact: no carry can
+     * propagate from one byte into the next.
+     */
+    private static long zeroBytes(long x) {
+        return ~(((x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | x | LOW_SEVEN_BITS);
+    }
+
+    private static boolean isASCII(byte[] s, int n) {
+        int i = 0;
+        if (n >= 8) {
+            ByteBuffer words = ByteBuffer.wrap(s);
+            long bits = 0;
+            for (; i <= n - 8; i += 8) {
+                bits |= words.getLong(i);
+            }
+            if ((bits & ~LOW_SEVEN_BITS) != 0) {
+                return false;
+            }
+        }
+        for (; i < n; ++i) {
+            if (s[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final long PERCENTS = 0x2525252525252525L;
+
+    private static final long PLUSES = 0x2B2B2B2B2B2B2B2BL;
+
+    private static final long AMPERSANDS = 0x2626262626262626L;
+
+    private static final long EQUALSES = 0x3D3D3D3D3D3D3D3DL;
+
+    /** Append the UTF-8 characters represented by the first n bytes. */
+    private static void appendBytes(byte[] bytes, int n, boolean ascii, StringBuilder into) {
+        if (ascii) {
+            for (int b = 0; b < n; ++b) {
+                into.append((char) bytes[b]);
+            }
+        } else {
+            into.append(CharsetCodec.decode(bytes, 0, n, CharsetCodec.UTF_8));
+        }
+    }
+
+    private static int hexValue(char c) {
+        int value = (c < 0x80) ? HEX_VALUE[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException(
+                    "Illegal hex characters in escape (%) pattern: " + c);
+        }
+        return value;
     }
 
     /**
@@ -314,38 +988,39 @@ public class OAuth {
 
         @Override
         public String toString() {
-            return percentEncode(getKey()) + '=' + percentEncode(getValue());
+            StringBuilder into = new StringBuilder();
+            percentEncode(getKey(), into).append('=');
+            return percentEncode(getValue(), into).toString();
         }
 
+        /** As specified by Map.Entry. */
         @Override
         public int hashCode()
         {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((key == null) ? 0 : key.hashCode());
-            result = prime * result + ((value == null) ? 0 : value.hashCode());
-            return result;
+            return ((key == null) ? 0 : key.hashCode()) ^ ((value == null) ? 0 : value.hashCode());
         }
 
+        /**
+         * As specified by Map.Entry: true iff obj is a Map.Entry with an equal
+         * key and value; for example an EncodedParameter.
+         */
         @Override
         public boolean equals(Object obj)
         {
             if (this == obj)
                 return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
+            if (!(obj instanceof Map.Entry))
                 return false;
-            final Parameter that = (Parameter) obj;
+            final Map.Entry that = (Map.Entry) obj;
             if (key == null) {
-                if (that.key != null)
+                if (that.getKey() != null)
                     return false;
-            } else if (!key.equals(that.key))
+            } else if (!key.equals(that.getKey()))
                 return false;
             if (value == null) {
-                if (that.value != null)
+                if (that.getValue() != null)
                     return false;
-            } else if (!value.equals(that.value))
+            } else if (!value.equals(that.getValue()))
                 return false;
             return true;
         }
@@ -24,6 +24,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import net.oauth.signature.OAuthSignatureMethod;
+
 /**
  * Properties of one User of an OAuthConsumer. Properties may be added freely,
  * e.g. to support extensions.
@@ -48,10 +50,15 @@ public class OAuthAccessor implements Cloneable, Serializable {
 
     private final Map<String, Object> properties = new HashMap<String, Object>();
 
+    /** The signature method cached by OAuthSignatureMethod.getSigner. */
+    private transient volatile OAuthSignatureMethod signer;
+
     @Override
     public OAuthAccessor clone() {
         try {
-            return (OAuthAccessor) super.clone();
+            OAuthAccessor clone = (OAuthAccessor) super.clone();
+            clone.signer = null;
+            return clone;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
@@ -63,6 +70,20 @@ public class OAuthAccessor implements Cloneable, Serializable {
 
     public void setProperty(String name, Object value) {
         properties.put(name, value);
+        signer = null;
+    }
+
+    /**
+     * Get the signature method that was cached by
+     * OAuthSignatureMethod.getSigner, or null. It's not serialized or cloned.
+     */
+    public OAuthSignatureMethod getSigner() {
+        return signer;
+    }
+
+    /** Cache a signature method, or discard the cached one (if signer is null). */
+    public void setSigner(OAuthSignatureMethod signer) {
+        this.signer = signer;
     }
 
     /**
@@ -17,6 +17,7 @@
 package net.oauth;
 
 import java.io.Serializable;
+import java.security.Key;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -51,6 +52,68 @@ public class OAuthConsumer implements Serializable {
 
     public void setProperty(String name, Object value) {
         properties.put(name, value);
+        ++propertiesVersion;
+    }
+
+    /** Incremented when a property is set. */
+    private transient volatile int propertiesVersion = 0;
+
+    /**
+     * A number that changes when a property is set, so an object derived from
+     * the properties (such as a signer cached by
+     * OAuthSignatureMethod.getSigner) can tell whether it's out of date.
+     */
+    public int getPropertiesVersion() {
+        return propertiesVersion;
+    }
+
+    /** Keys parsed from properties, which are discarded when a property is set. */
+    private transient volatile ParsedKeys parsedKeys = null;
+
+    /**
+     * Get the key that was parsed from the given property and cached by
+     * setParsedKey, or null. The key isn't serialized.
+     */
+    public Key getParsedKey(String name) {
+        ParsedKeys keys = parsedKeys;
+        return (keys == null || keys.version != propertiesVersion) ? null : keys.get(name);
+    }
+
+    /**
+     * Cache a key parsed from the given property, for example by
+     * PublicKeySignatureMethod. The key is ignored if a property has been
+     * set since getPropertiesVersion returned the given version. To discard
+     * a key (for example after modifying an array that contains it), set its
+     * property again.
+     */
+    public synchronized void setParsedKey(String name, Key key, int propertiesVersion) {
+        if (propertiesVersion == this.propertiesVersion) {
+            ParsedKeys keys = parsedKeys;
+            if (keys == null || keys.version != propertiesVersion) {
+                keys = new ParsedKeys(propertiesVersion);
+            } else {
+                keys = new ParsedKeys(keys);
+            }
+            keys.put(name, key);
+            parsedKeys = keys;
+        }
+    }
+
+    /** A copy-on-write map of parsed keys, for one version of the properties. */
+    private static class ParsedKeys extends HashMap<String, Key> {
+
+        ParsedKeys(int version) {
+            this.version = version;
+        }
+
+        ParsedKeys(ParsedKeys from) {
+            super(from);
+            this.version = from.version;
+        }
+
+        final int version;
+
+        private static final long serialVersionUID = 1L;
     }
 
     /**
@@ -55,12 +55,13 @@ public class OAuthMessage {
         this.URL = URL;
         this.bodyAsStream = bodyAsStream;
         if (parameters == null) {
-            this.parameters = new ArrayList<Map.Entry<String, String>>();
+            this.parameters = new ParameterList();
         } else {
-            this.parameters = new ArrayList<Map.Entry<String, String>>(parameters.size());
+            this.parameters = new ParameterList(parameters.size() + 8);
             for (Map.Entry p : parameters) {
-                this.parameters.add(new OAuth.Parameter(
-                        toString(p.getKey()), toString(p.getValue())));
+                this.parameters.add((p instanceof EncodedParameter)
+                        ? new EncodedParameter((EncodedParameter) p)
+                        : new EncodedParameter(toString(p.getKey()), toString(p.getValue())));
             }
         }
     }
@@ -68,8 +69,7 @@ public class OAuthMessage {
     public String method;
     public String URL;
 
-    private final List<Map.Entry<String, String>> parameters;
-    private Map<String, String> parameterMap;
+    private final ParameterList parameters;
     private boolean parametersAreComplete = false;
     private final List<Map.Entry<String, String>> headers = new ArrayList<Map.Entry<String, String>>();
     private final InputStream bodyAsStream;
@@ -99,18 +99,16 @@ public class OAuthMessage {
     }
 
     public void addParameter(String key, String value) {
-        addParameter(new OAuth.Parameter(key, value));
+        addParameter(new EncodedParameter(key, value));
     }
 
     public void addParameter(Map.Entry<String, String> parameter) {
         parameters.add(parameter);
-        parameterMap = null;
     }
 
     public void addParameters(
             Collection<? extends Map.Entry<String, String>> parameters) {
         this.parameters.addAll(parameters);
-        parameterMap = null;
     }
 
     public String getParameter(String name) throws IOException {
@@ -133,12 +131,13 @@ public class OAuthMessage {
         return getParameter(OAuth.OAUTH_SIGNATURE);
     }
 
+    /**
+     * A read-only view of the first value of each parameter name. It's
+     * indexed as parameters are added, so it's never rebuilt.
+     */
     protected Map<String, String> getParameterMap() throws IOException {
         beforeGetParameter();
-        if (parameterMap == null) {
-            parameterMap = OAuth.newMap(parameters);
-        }
-        return parameterMap;
+        return parameters.asMap();
     }
 
     /**
@@ -257,15 +256,14 @@ public class OAuthMessage {
      */
     public void addRequiredParameters(OAuthAccessor accessor)
             throws OAuthException, IOException, URISyntaxException {
-        final Map<String, String> pMap = OAuth.newMap(parameters);
-        if (pMap.get(OAuth.OAUTH_TOKEN) == null && accessor.accessToken != null) {
+        if (parameters.getFirst(OAuth.OAUTH_TOKEN) == null && accessor.accessToken != null) {
             addParameter(OAuth.OAUTH_TOKEN, accessor.accessToken);
         }
         final OAuthConsumer consumer = accessor.consumer;
-        if (pMap.get(OAuth.OAUTH_CONSUMER_KEY) == null) {
+        if (parameters.getFirst(OAuth.OAUTH_CONSUMER_KEY) == null) {
             addParameter(OAuth.OAUTH_CONSUMER_KEY, consumer.consumerKey);
         }
-        String signatureMethod = pMap.get(OAuth.OAUTH_SIGNATURE_METHOD);
+        String signatureMethod = parameters.getFirst(OAuth.OAUTH_SIGNATURE_METHOD);
         if (signatureMethod == null) {
             signatureMethod = (String) consumer.getProperty(OAuth.OAUTH_SIGNATURE_METHOD);
             if (signatureMethod == null) {
@@ -273,13 +271,13 @@ public class OAuthMessage {
             }
             addParameter(OAuth.OAUTH_SIGNATURE_METHOD, signatureMethod);
         }
-        if (pMap.get(OAuth.OAUTH_TIMESTAMP) == null) {
+        if (parameters.getFirst(OAuth.OAUTH_TIMESTAMP) == null) {
             addParameter(OAuth.OAUTH_TIMESTAMP, (System.currentTimeMillis() / 1000) + "");
         }
-        if (pMap.get(OAuth.OAUTH_NONCE) == null) {
+        if (parameters.getFirst(OAuth.OAUTH_NONCE) == null) {
             addParameter(OAuth.OAUTH_NONCE, System.nanoTime() + "");
         }
-        if (pMap.get(OAuth.OAUTH_VERSION) == null) {
+        if (parameters.getFirst(OAuth.OAUTH_VERSION) == null) {
         	addParameter(OAuth.OAUTH_VERSION, OAuth.VERSION_1_0);
         }
         this.sign(accessor);
@@ -292,7 +290,7 @@ public class OAuthMessage {
      */
     public void sign(OAuthAccessor accessor) throws IOException,
             OAuthException, URISyntaxException {
-        OAuthSignatureMethod.newSigner(this, accessor).sign(this);
+        OAuthSignatureMethod.getSigner(this, accessor).sign(this);
     }
 
     /**
@@ -302,7 +300,7 @@ public class OAuthMessage {
     public String getAuthorizationHeader(String realm) throws IOException {
         StringBuilder into = new StringBuilder();
         if (realm != null) {
-            into.append(" realm=\"").append(OAuth.percentEncode(realm)).append('"');
+            OAuth.percentEncode(realm, into.append(" realm=\"")).append('"');
         }
         beforeGetParameter();
         if (parameters != null) {
@@ -311,8 +309,14 @@ public class OAuthMessage {
                 if (name.startsWith("oauth_")) {
                     if (into.length() > 0) into.append(",");
                     into.append(" ");
-                    into.append(OAuth.percentEncode(name)).append("=\"");
-                    into.append(OAuth.percentEncode(toString(parameter.getValue()))).append('"');
+                    if (parameter instanceof EncodedParameter) {
+                        EncodedParameter encoded = (EncodedParameter) parameter;
+                        encoded.appendEncodedKey(into).append("=\"");
+                        encoded.appendEncodedValue(into).append('"');
+                    } else {
+                        OAuth.percentEncode(name, into).append("=\"");
+                        OAuth.percentEncode(toString(parameter.getValue()), into).append('"');
+                    }
                 }
             }
         }
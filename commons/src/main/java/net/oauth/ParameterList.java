@@ -0,0 +1,316 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * The parameters of an OAuthMessage: a list of name/value pairs, in the order
+ * they were added, indexed by name. A name may occur several times; lookups
+ * find the first occurrence, like OAuth.newMap. The index is maintained as
+ * parameters are added, so lookups never rebuild it. The standard oauth_*
+ * names are indexed by an array with a slot for each name, and other names
+ * by an open addressing hash table of positions in the list.
+ * <p>
+ * Parameters can be added but not removed. A ParameterList isn't
+ * thread-safe.
+ */
+class ParameterList extends AbstractList<Map.Entry<String, String>> implements RandomAccess {
+
+    /** The standard parameters, each of which is indexed by a fixed slot. */
+    enum Slot {
+        CONSUMER_KEY(OAuth.OAUTH_CONSUMER_KEY), //
+        TOKEN(OAuth.OAUTH_TOKEN), //
+        TOKEN_SECRET(OAuth.OAUTH_TOKEN_SECRET), //
+        SIGNATURE_METHOD(OAuth.OAUTH_SIGNATURE_METHOD), //
+        SIGNATURE(OAuth.OAUTH_SIGNATURE), //
+        TIMESTAMP(OAuth.OAUTH_TIMESTAMP), //
+        NONCE(OAuth.OAUTH_NONCE), //
+        VERSION(OAuth.OAUTH_VERSION), //
+        CALLBACK(OAuth.OAUTH_CALLBACK), //
+        CALLBACK_CONFIRMED(OAuth.OAUTH_CALLBACK_CONFIRMED), //
+        VERIFIER(OAuth.OAUTH_VERIFIER), //
+        BODY_HASH(OAuth.OAUTH_BODY_HASH);
+
+        Slot(String parameterName) {
+            this.parameterName = parameterName;
+        }
+
+        final String parameterName;
+
+        private static final Map<String, Slot> BY_NAME = new HashMap<String, Slot>();
+        static {
+            for (Slot slot : values()) {
+                BY_NAME.put(slot.parameterName, slot);
+            }
+        }
+
+        /** @return the slot for the given parameter name, or null if none */
+        static Slot of(String name) {
+            return name.startsWith("oauth_") ? BY_NAME.get(name) : null;
+        }
+    }
+
+    ParameterList() {
+        this(8);
+    }
+
+    @SuppressWarnings("unchecked")
+    ParameterList(int capacity) {
+        entries = new Map.Entry[Math.max(capacity, 4)];
+        Arrays.fill(slots, -1);
+    }
+
+    /** The parameters, in order; entries[size, length) are null. */
+    private Map.Entry<String, String>[] entries;
+
+    private int size = 0;
+
+    /** For each Slot, the position of the first parameter with its name, or -1. */
+    private final int[] slots = new int[Slot.values().length];
+
+    /** The position of the first parameter whose name is null, or -1. */
+    private int nullName = -1;
+
+    /**
+     * Positions (plus 1, so 0 means empty) of the first parameter with each
+     * name that has no Slot, placed by the name's hash with linear probing.
+     * The length is a power of 2, and at most half the elements are used.
+     */
+    private int[] table = new int[8];
+
+    /** The number of distinct names in table. */
+    private int tableNames = 0;
+
+    private Map<String, String> map = null;
+
+    @Override
+    public Map.Entry<String, String> get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return entries[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(Map.Entry<String, String> parameter) {
+        if (size == entries.length) {
+            @SuppressWarnings("unchecked")
+            Map.Entry<String, String>[] bigger = new Map.Entry[size * 2];
+            System.arraycopy(entries, 0, bigger, 0, size);
+            entries = bigger;
+        }
+        entries[size] = parameter;
+        index(size);
+        ++size;
+        ++modCount;
+        return true;
+    }
+
+    @Override
+    public void add(int index, Map.Entry<String, String> parameter) {
+        if (index != size) {
+            throw new UnsupportedOperationException("parameters can only be appended");
+        }
+        add(parameter);
+    }
+
+    /** The position of the first parameter with the given name, or -1. */
+    int indexOf(String name) {
+        if (name == null) {
+            return nullName;
+        }
+        Slot slot = Slot.of(name);
+        if (slot != null) {
+            return slots[slot.ordinal()];
+        }
+        final int mask = table.length - 1;
+        for (int t = hash(name) & mask;; t = (t + 1) & mask) {
+            final int p = table[t] - 1;
+            if (p < 0) {
+                return -1;
+            }
+            if (name.equals(nameOf(entries[p]))) {
+                return p;
+            }
+        }
+    }
+
+    /** The value of the first parameter with the given name, or null. */
+    String getFirst(String name) {
+        final int p = indexOf(name);
+        return (p < 0) ? null : valueOf(entries[p]);
+    }
+
+    /**
+     * A read-only view of the first value of each name, which reflects
+     * parameters added later.
+     */
+    Map<String, String> asMap() {
+        if (map == null) {
+            map = new FirstValues();
+        }
+        return map;
+    }
+
+    /** Add entries[position] to the index, if it's the first with its name. */
+    private void index(int position) {
+        final String name = nameOf(entries[position]);
+        if (name == null) {
+            if (nullName < 0) {
+                nullName = position;
+            }
+            return;
+        }
+        Slot slot = Slot.of(name);
+        if (slot != null) {
+            if (slots[slot.ordinal()] < 0) {
+                slots[slot.ordinal()] = position;
+            }
+            return;
+        }
+        if ((tableNames + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        final int mask = table.length - 1;
+        for (int t = hash(name) & mask;; t = (t + 1) & mask) {
+            final int p = table[t] - 1;
+            if (p < 0) {
+                table[t] = position + 1;
+                ++tableNames;
+                return;
+            }
+            if (name.equals(nameOf(entries[p]))) {
+                return; // not the first
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        final int[] old = table;
+        table = new int[capacity];
+        final int mask = capacity - 1;
+        for (int p1 : old) {
+            if (p1 > 0) {
+                int t = hash(nameOf(entries[p1 - 1])) & mask;
+                while (table[t] != 0) {
+                    t = (t + 1) & mask;
+                }
+                table[t] = p1;
+            }
+        }
+    }
+
+    private static int hash(String name) {
+        final int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static String nameOf(Map.Entry parameter) {
+        Object name = parameter.getKey();
+        return (name == null) ? null : name.toString();
+    }
+
+    private static String valueOf(Map.Entry parameter) {
+        Object value = parameter.getValue();
+        return (value == null) ? null : value.toString();
+    }
+
+    private boolean isFirst(int position) {
+        return indexOf(nameOf(entries[position])) == position;
+    }
+
+    private class FirstValues extends AbstractMap<String, String> {
+
+        @Override
+        public String get(Object name) {
+            return (name == null || name instanceof String) ? getFirst((String) name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return (name == null || name instanceof String) && indexOf((String) name) >= 0;
+        }
+
+        @Override
+        public int size() {
+            int names = tableNames + ((nullName < 0) ? 0 : 1);
+            for (int p : slots) {
+                if (p >= 0) {
+                    ++names;
+                }
+            }
+            return names;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+
+                @Override
+                public int size() {
+                    return FirstValues.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Iterator<Map.Entry<String, String>>() {
+
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            while (from < size && !isFirst(from)) {
+                                ++from;
+                            }
+                            return from;
+                        }
+
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        public Map.Entry<String, String> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, String> p = entries[next];
+                            next = advance(next + 1);
+                            return new OAuth.Parameter(nameOf(p), valueOf(p));
+                        }
+
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+}
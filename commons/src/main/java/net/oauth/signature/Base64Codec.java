@@ -0,0 +1,251 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import net.oauth.CharsetCodec;
+
+/**
+ * Base64 encoding and decoding (RFC 2045, without line breaks), for signature
+ * values and keys. All methods are static and stateless, so they're safe to
+ * call from many threads at once. Callers that sign or verify at high rates
+ * can encode into their own char[] or StringBuilder, and decode into their
+ * own byte[], which avoids allocating intermediate arrays.
+ * <p>
+ * Decoding is strict and fast for canonical base64: a multiple of four
+ * characters from the standard alphabet, with padding only at the end. Other
+ * input (for example, containing line breaks) is decoded leniently, like RFC
+ * 2045 specifies for MIME: characters outside the alphabet are ignored, and
+ * decoding stops at the first pad character.
+ */
+public class Base64Codec {
+
+    private static final char[] ALPHABET = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+            + "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
+
+    private static final char PAD = '=';
+
+    /** Maps a character to its 6-bit value, or -1 if it's not in ALPHABET. */
+    private static final int[] VALUE = new int[128];
+    static {
+        java.util.Arrays.fill(VALUE, -1);
+        for (int i = 0; i < ALPHABET.length; ++i) {
+            VALUE[ALPHABET[i]] = i;
+        }
+    }
+
+    /** The number of characters in the encoding of the given number of bytes. */
+    public static int encodedLength(int byteCount) {
+        return ((byteCount + 2) / 3) * 4;
+    }
+
+    /** Encode the given bytes. */
+    public static String encode(byte[] from) {
+        return encode(from, 0, from.length);
+    }
+
+    /** Encode from[offset, offset + length). */
+    public static String encode(byte[] from, int offset, int length) {
+        char[] into = new char[encodedLength(length)];
+        encode(from, offset, length, into, 0);
+        return new String(into);
+    }
+
+    /**
+     * Encode from[offset, offset + length) into the given array, starting at
+     * the given index.
+     *
+     * @return the index after the last character stored
+     * @throws ArrayIndexOutOfBoundsException
+     *             into has less than encodedLength(length) elements after
+     *             intoOffset
+     */
+    public static int encode(byte[] from, int offset, int length, char[] into,
+            int intoOffset) {
+        final char[] alphabet = ALPHABET;
+        final int end = offset + length;
+        final int groupsEnd = offset + (length - (length % 3));
+        int i = offset;
+        int o = intoOffset;
+        // Each iteration encodes 3 bytes into 4 characters, without branches.
+        // A 20 byte HMAC-SHA1 signature is 6 iterations plus a tail of 2
+        // bytes; a 256 byte RSA signature is 85 iterations plus 1.
+        while (i < groupsEnd) {
+            final int bits = ((from[i] & 0xFF) << 16) | ((from[i + 1] & 0xFF) << 8)
+                    | (from[i + 2] & 0xFF);
+            into[o] = alphabet[bits >>> 18];
+            into[o + 1] = alphabet[(bits >>> 12) & 0x3F];
+            into[o + 2] = alphabet[(bits >>> 6) & 0x3F];
+            into[o + 3] = alphabet[bits & 0x3F];
+            i += 3;
+            o += 4;
+        }
+        switch (end - i) {
+        case 1: {
+            final int bits = (from[i] & 0xFF) << 16;
+            into[o++] = alphabet[bits >>> 18];
+            into[o++] = alphabet[(bits >>> 12) & 0x3F];
+            into[o++] = PAD;
+            into[o++] = PAD;
+            break;
+        }
+        case 2: {
+            final int bits = ((from[i] & 0xFF) << 16) | ((from[i + 1] & 0xFF) << 8);
+            into[o++] = alphabet[bits >>> 18];
+            into[o++] = alphabet[(bits >>> 12) & 0x3F];
+            into[o++] = alphabet[(bits >>> 6) & 0x3F];
+            into[o++] = PAD;
+            break;
+        }
+        }
+        return o;
+    }
+
+    /**
+     * Append the encoding of from[offset, offset + length) to the given
+     * StringBuilder.
+     */
+    public static StringBuilder encode(byte[] from, int offset, int length,
+            StringBuilder into) {
+        final int start = into.length();
+        into.setLength(start + encodedLength(length));
+        final char[] alphabet = ALPHABET;
+        final int end = offset + length;
+        int o = start;
+        for (int i = offset; i < end; i += 3) {
+            final int remaining = end - i;
+            final int bits = ((from[i] & 0xFF) << 16)
+                    | ((remaining > 1) ? ((from[i + 1] & 0xFF) << 8) : 0)
+                    | ((remaining > 2) ? (from[i + 2] & 0xFF) : 0);
+            into.setCharAt(o, alphabet[bits >>> 18]);
+            into.setCharAt(o + 1, alphabet[(bits >>> 12) & 0x3F]);
+            into.setCharAt(o + 2, (remaining > 1) ? alphabet[(bits >>> 6) & 0x3F] : PAD);
+            into.setCharAt(o + 3, (remaining > 2) ? alphabet[bits & 0x3F] : PAD);
+            o += 4;
+        }
+        return into;
+    }
+
+    /**
+     * The number of bytes encoded by the given canonical base64, or -1 if it
+     * isn't canonical (in which case decode would use the lenient decoder).
+     * Only the length and padding are checked here, not every character.
+     */
+    public static int decodedLength(CharSequence from) {
+        final int length = from.length();
+        if (length % 4 != 0) {
+            return -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+        int pad = 0;
+        if (from.charAt(length - 1) == PAD) {
+            ++pad;
+            if (from.charAt(length - 2) == PAD) {
+                ++pad;
+            }
+        }
+        return (length / 4) * 3 - pad;
+    }
+
+    /** Decode the given base64. */
+    public static byte[] decode(CharSequence from) {
+        final int length = decodedLength(from);
+        if (length >= 0) {
+            byte[] into = new byte[length];
+            if (decode(from, into, 0) == length) {
+                return into;
+            }
+        }
+        return decodeLeniently(from);
+    }
+
+    /**
+     * Decode the given canonical base64 into the given array, starting at the
+     * given index.
+     *
+     * @return the number of bytes stored, or -1 if the input isn't canonical
+     *         base64, in which case the contents of into are unspecified
+     * @throws ArrayIndexOutOfBoundsException
+     *             into has less than decodedLength(from) elements after
+     *             intoOffset
+     */
+    public static int decode(CharSequence from, byte[] into, int intoOffset) {
+        final int decodedLength = decodedLength(from);
+        if (decodedLength < 0) {
+            return -1;
+        }
+        final int length = from.length();
+        if (length == 0) {
+            return 0;
+        }
+        final int[] value = VALUE;
+        // Decode all the groups except the last, which may contain padding.
+        final int groupsEnd = length - 4;
+        int o = intoOffset;
+        int invalid = 0;
+        for (int i = 0; i < groupsEnd; i += 4) {
+            final char c0 = from.charAt(i);
+            final char c1 = from.charAt(i + 1);
+            final char c2 = from.charAt(i + 2);
+            final char c3 = from.charAt(i + 3);
+            if ((c0 | c1 | c2 | c3) >= 128) {
+                return -1;
+            }
+            final int v0 = value[c0];
+            final int v1 = value[c1];
+            final int v2 = value[c2];
+            final int v3 = value[c3];
+            // A negative value sets the sign bit, which is checked after the loop.
+            invalid |= v0 | v1 | v2 | v3;
+            final int bits = (v0 << 18) | (v1 << 12) | (v2 << 6) | v3;
+            into[o] = (byte) (bits >> 16);
+            into[o + 1] = (byte) (bits >> 8);
+            into[o + 2] = (byte) bits;
+            o += 3;
+        }
+        if (invalid < 0) {
+            return -1;
+        }
+        final int tail = decodedLength - (o - intoOffset);
+        final int v0 = valueOf(from.charAt(groupsEnd));
+        final int v1 = valueOf(from.charAt(groupsEnd + 1));
+        final int v2 = (tail > 1) ? valueOf(from.charAt(groupsEnd + 2)) : 0;
+        final int v3 = (tail > 2) ? valueOf(from.charAt(groupsEnd + 3)) : 0;
+        if ((v0 | v1 | v2 | v3) < 0) {
+            return -1;
+        }
+        final int bits = (v0 << 18) | (v1 << 12) | (v2 << 6) | v3;
+        into[o++] = (byte) (bits >> 16);
+        if (tail > 1) {
+            into[o++] = (byte) (bits >> 8);
+            if (tail > 2) {
+                into[o++] = (byte) bits;
+            }
+        }
+        return o - intoOffset;
+    }
+
+    private static int valueOf(char c) {
+        return (c < 128) ? VALUE[c] : -1;
+    }
+
+    /** Decode non-canonical base64, the way Base64.decodeBase64 does. */
+    private static byte[] decodeLeniently(CharSequence from) {
+        return Base64.decodeBase64(CharsetCodec.encode(from.toString(),
+                CharsetCodec.ISO_8859_1));
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+
+/**
+ * The Ed25519 signature method (<a
+ * href="http://tools.ietf.org/html/rfc8032">RFC 8032</a>), whose keys and
+ * signatures are much smaller than RSA-SHA1's of comparable strength. Its
+ * speed depends on the security provider: the JDK's implementation signs
+ * faster than RSA with a 2048-bit key, but verifies much slower (see
+ * Ed25519Benchmark in the tests). It's configured
+ * like RSA_SHA1: the consumer sets the property Ed25519.PRIVATE_KEY, and the
+ * service provider sets Ed25519.PUBLIC_KEY or Ed25519.X509_CERTIFICATE. Keys
+ * may be PKCS#8 (private) or X.509 (public) encoded, in PEM or DER.
+ * <p>
+ * This requires a Java security provider that implements Ed25519, which the
+ * JDK includes as of Java 15. The method is registered only if such a
+ * provider is available.
+ */
+public class Ed25519 extends PublicKeySignatureMethod {
+
+    final static public String PRIVATE_KEY = "Ed25519.PrivateKey";
+    final static public String PUBLIC_KEY = "Ed25519.PublicKey";
+    final static public String X509_CERTIFICATE = "Ed25519.X509Certificate";
+
+    public Ed25519() {
+        super(ALGORITHM, ALGORITHM, PRIVATE_KEY, PUBLIC_KEY, X509_CERTIFICATE);
+    }
+
+    /** Whether a security provider implements Ed25519. */
+    public static boolean isSupported() {
+        try {
+            Signature.getInstance(ALGORITHM);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    private static final String ALGORITHM = "Ed25519";
+
+}
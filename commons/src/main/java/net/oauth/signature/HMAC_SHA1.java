@@ -16,7 +16,7 @@
 
 package net.oauth.signature;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
@@ -24,6 +24,7 @@ import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import net.oauth.CharsetCodec;
 import net.oauth.OAuth;
 import net.oauth.OAuthException;
 
@@ -41,8 +42,6 @@ class HMAC_SHA1 extends OAuthSignatureMethod {
             return signature;
         } catch (GeneralSecurityException e) {
             throw new OAuthException(e);
-        } catch (UnsupportedEncodingException e) {
-            throw new OAuthException(e);
         }
     }
 
@@ -55,50 +54,124 @@ class HMAC_SHA1 extends OAuthSignatureMethod {
             return equals(expected, actual);
         } catch (GeneralSecurityException e) {
             throw new OAuthException(e);
-        } catch (UnsupportedEncodingException e) {
+        }
+    }
+
+    @Override
+    protected String getSignature(SignatureBaseString baseString)
+            throws OAuthException {
+        try {
+            return base64Encode(computeSignature(baseString));
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        }
+    }
+
+    @Override
+    protected boolean isValid(String signature, SignatureBaseString baseString)
+            throws OAuthException {
+        try {
+            byte[] expected = computeSignature(baseString);
+            byte[] actual = decodeBase64(signature);
+            return equals(expected, actual);
+        } catch (GeneralSecurityException e) {
             throw new OAuthException(e);
         }
     }
 
     private byte[] computeSignature(String baseString)
-            throws GeneralSecurityException, UnsupportedEncodingException {
-        SecretKey key = null;
+            throws GeneralSecurityException {
+        byte[] text = CharsetCodec.encode(baseString, ENCODING);
+        return newMac().doFinal(text);
+    }
+
+    private byte[] computeSignature(SignatureBaseString baseString)
+            throws GeneralSecurityException {
+        Mac mac = newMac();
+        baseString.update(mac);
+        return mac.doFinal();
+    }
+
+    /**
+     * Get a Mac that's initialized with this signer's key. A prototype Mac is
+     * initialized once per signer, and cloned for each use; so a signer that's
+     * cached by getSigner and used for many requests from the same consumer
+     * and token doesn't repeat the provider lookup or the key setup. The key
+     * is held only by this signer, not in a static cache, so it becomes
+     * unreachable along with the accessor. If the provider's Mac can't be
+     * cloned, this falls back to a Mac per thread, initialized with the key
+     * each time.
+     */
+    private Mac newMac() throws GeneralSecurityException {
+        Keyed keyed;
         synchronized (this) {
-            if (this.key == null) {
+            if (this.keyed == null) {
                 String keyString = OAuth.percentEncode(getConsumerSecret())
                         + '&' + OAuth.percentEncode(getTokenSecret());
-                byte[] keyBytes = keyString.getBytes(ENCODING);
-                this.key = new SecretKeySpec(keyBytes, MAC_NAME);
+                this.keyed = new Keyed(new SecretKeySpec(CharsetCodec.encode(keyString,
+                        ENCODING), MAC_NAME));
+            }
+            keyed = this.keyed;
+        }
+        if (cloneable) {
+            try {
+                return (Mac) keyed.prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                cloneable = false;
             }
-            key = this.key;
         }
-        Mac mac = Mac.getInstance(MAC_NAME);
-        mac.init(key);
-        byte[] text = baseString.getBytes(ENCODING);
-        return mac.doFinal(text);
+        Mac mac = PER_THREAD.get();
+        if (mac == null) {
+            mac = Mac.getInstance(MAC_NAME);
+            PER_THREAD.set(mac);
+        }
+        mac.init(keyed.key);
+        return mac;
+    }
+
+    /**
+     * A key, and a Mac that's initialized with it. The prototype is never
+     * updated, so it may be cloned by several threads concurrently.
+     */
+    private static class Keyed {
+
+        Keyed(SecretKey key) throws GeneralSecurityException {
+            this.key = key;
+            prototype = Mac.getInstance(MAC_NAME);
+            prototype.init(key);
+        }
+
+        final SecretKey key;
+
+        final Mac prototype;
     }
 
     /** ISO-8859-1 or US-ASCII would work, too. */
-    private static final String ENCODING = OAuth.ENCODING;
+    private static final Charset ENCODING = CharsetCodec.UTF_8;
 
     private static final String MAC_NAME = "HmacSHA1";
 
-    private SecretKey key = null;
+    private static final ThreadLocal<Mac> PER_THREAD = new ThreadLocal<Mac>();
+
+    /** Whether the provider's Mac supports clone, so far as we know. */
+    private static volatile boolean cloneable = true;
+
+    private Keyed keyed = null;
 
     @Override
     public void setConsumerSecret(String consumerSecret) {
+        super.setConsumerSecret(consumerSecret);
         synchronized (this) {
-            key = null;
+            keyed = null;
         }
-        super.setConsumerSecret(consumerSecret);
     }
 
     @Override
     public void setTokenSecret(String tokenSecret) {
+        super.setTokenSecret(tokenSecret);
         synchronized (this) {
-            key = null;
+            keyed = null;
         }
-        super.setTokenSecret(tokenSecret);
     }
 
 }
@@ -0,0 +1,175 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded map that evicts the least recently used entries. It's safe for
+ * concurrent use: the entries are divided among several stripes, each of
+ * which is locked separately. So the eviction order is only approximately
+ * LRU over the whole cache.
+ * <p>
+ * The cache counts hits and misses, so its capacity can be tuned.
+ */
+public class LRUCache<K, V> {
+
+    /** Construct a cache that holds about the given number of entries. */
+    public LRUCache(int capacity) {
+        this(capacity, STRIPES);
+    }
+
+    /**
+     * @param stripes
+     *            how many parts to divide the cache into, which is rounded up
+     *            to a power of 2
+     */
+    @SuppressWarnings("unchecked")
+    public LRUCache(int capacity, int stripes) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        int s = 1;
+        while (s < stripes && s < capacity) {
+            s <<= 1;
+        }
+        this.capacity = capacity;
+        this.stripes = new Stripe[s];
+        final int stripeCapacity = (capacity + s - 1) / s;
+        for (int i = 0; i < s; ++i) {
+            this.stripes[i] = new Stripe<K, V>(stripeCapacity);
+        }
+    }
+
+    private final int capacity;
+
+    private final Stripe<K, V>[] stripes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /** @return the value for the given key, or null if it's not in the cache */
+    public V get(K key) {
+        Stripe<K, V> stripe = getStripe(key);
+        V value;
+        synchronized (stripe) {
+            value = stripe.get(key);
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Add an entry, possibly evicting the least recently used entry in the
+     * same stripe.
+     *
+     * @return the value previously associated with the key, or null
+     */
+    public V put(K key, V value) {
+        Stripe<K, V> stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.put(key, value);
+        }
+    }
+
+    /** @return the value that was removed, or null */
+    public V remove(K key) {
+        Stripe<K, V> stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key);
+        }
+    }
+
+    /** Remove all the entries. The hit and miss counts aren't changed. */
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /** The number of entries in the cache. */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /** The approximate maximum number of entries. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** The number of times get found a value. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** The number of times get returned null. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Set the hit and miss counts to zero. */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "LRUCache(size=" + size() + ", capacity=" + capacity + ", hits="
+                + getHits() + ", misses=" + getMisses() + ")";
+    }
+
+    private Stripe<K, V> getStripe(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private static final int STRIPES = 16;
+
+    private static class Stripe<K, V> extends LinkedHashMap<K, V> {
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        private final int capacity;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+}
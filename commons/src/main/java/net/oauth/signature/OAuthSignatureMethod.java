@@ -16,16 +16,24 @@
 
 package net.oauth.signature;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import net.oauth.CharsetCodec;
+import net.oauth.EncodedParameter;
 import net.oauth.OAuth;
 import net.oauth.OAuthAccessor;
 import net.oauth.OAuthConsumer;
@@ -37,8 +45,14 @@ import net.oauth.OAuthProblemException;
  * A pair of algorithms for computing and verifying an OAuth digital signature.
  * <p>
  * Static methods of this class implement a registry of signature methods. It's
- * pre-populated with the standard OAuth algorithms. Appliations can replace
- * them or add new ones.
+ * pre-populated with the standard OAuth algorithms, and the factories listed
+ * in META-INF/services (see OAuthSignatureMethodFactory). Appliations can
+ * replace them or add new ones.
+ * <p>
+ * An object constructed by newMethod or newSigner is mutable, and not safe
+ * for concurrent use while it's being changed. An object from getSigner is
+ * immutable and may be shared, unless its class was registered by
+ * registerMethodClass.
  * 
  * @author John Kristian
  */
@@ -49,7 +63,7 @@ public abstract class OAuthSignatureMethod {
      * @throws IOException */
     public void sign(OAuthMessage message)
     throws OAuthException, IOException, URISyntaxException {
-        message.addParameter(new OAuth.Parameter("oauth_signature",
+        message.addParameter(new EncodedParameter("oauth_signature",
                 getSignature(message)));
     }
 
@@ -64,21 +78,81 @@ public abstract class OAuthSignatureMethod {
     throws IOException, OAuthException, URISyntaxException {
         message.requireParameters("oauth_signature");
         String signature = message.getSignature();
-        String baseString = getBaseString(message);
+        SignatureBaseString baseString = newBaseString(message);
         if (!isValid(signature, baseString)) {
             OAuthProblemException problem = new OAuthProblemException(
                     "signature_invalid");
             problem.setParameter("oauth_signature", signature);
-            problem.setParameter("oauth_signature_base_string", baseString);
+            problem.setParameter("oauth_signature_base_string", baseString.toString());
             problem.setParameter("oauth_signature_method", message
                     .getSignatureMethod());
             throw problem;
         }
     }
 
+    /**
+     * Check whether the message has a valid signature by any of the given
+     * signature methods; for example, methods initialized with the old and
+     * new keys of a consumer whose key is being replaced. The signature base
+     * string is constructed once. The candidates are tried in order, starting
+     * with candidates.get(first) and wrapping around to the beginning. A
+     * candidate that can't verify signatures (for example, because it has no
+     * public key) is skipped, so the others are still tried.
+     * 
+     * @return the index of the candidate that verified the signature
+     * @throws OAuthProblemException
+     *             no candidate verified the signature. If some candidates
+     *             were skipped, the parameter oauth_candidates_skipped is
+     *             their number, and the cause is why the first was skipped.
+     */
+    public static int validate(OAuthMessage message,
+            List<? extends OAuthSignatureMethod> candidates, int first)
+            throws IOException, OAuthException, URISyntaxException {
+        message.requireParameters("oauth_signature");
+        String signature = message.getSignature();
+        SignatureBaseString baseString = newBaseString(message);
+        final int size = candidates.size();
+        if (first < 0 || first >= size) {
+            first = 0;
+        }
+        Exception skipped = null;
+        int skippedCount = 0;
+        for (int c = 0; c < size; ++c) {
+            final int i = (first + c) % size;
+            try {
+                if (candidates.get(i).isValid(signature, baseString)) {
+                    return i;
+                }
+            } catch (OAuthException e) {
+                skipped = (skipped == null) ? e : skipped;
+                ++skippedCount;
+            } catch (RuntimeException e) {
+                skipped = (skipped == null) ? e : skipped;
+                ++skippedCount;
+            }
+        }
+        OAuthProblemException problem = new OAuthProblemException(
+                "signature_invalid");
+        problem.setParameter("oauth_signature", signature);
+        problem.setParameter("oauth_signature_base_string", baseString.toString());
+        problem.setParameter("oauth_signature_method", message
+                .getSignatureMethod());
+        if (skipped != null) {
+            problem.setParameter(CANDIDATES_SKIPPED, Integer.toString(skippedCount));
+            problem.initCause(skipped);
+        }
+        throw problem;
+    }
+
+    /**
+     * The name of a parameter of the problem thrown by validate, whose value
+     * is the number of candidates that couldn't verify signatures.
+     */
+    public static final String CANDIDATES_SKIPPED = "oauth_candidates_skipped";
+
     protected String getSignature(OAuthMessage message)
     throws OAuthException, IOException, URISyntaxException {
-        String baseString = getBaseString(message);
+        SignatureBaseString baseString = newBaseString(message);
         String signature = getSignature(baseString);
         // Logger log = Logger.getLogger(getClass().getName());
         // if (log.isLoggable(Level.FINE)) {
@@ -117,15 +191,58 @@ public abstract class OAuthSignatureMethod {
     protected abstract boolean isValid(String signature, String baseString)
             throws OAuthException;
 
+    /**
+     * Compute the signature for the given base string. This implementation
+     * converts the base string to a String; a subclass can override it to
+     * consume the bytes directly.
+     */
+    protected String getSignature(SignatureBaseString baseString)
+            throws OAuthException {
+        return getSignature(baseString.toString());
+    }
+
+    /**
+     * Decide whether the signature is valid. This implementation converts the
+     * base string to a String; a subclass can override it to consume the
+     * bytes directly.
+     */
+    protected boolean isValid(String signature, SignatureBaseString baseString)
+            throws OAuthException {
+        return isValid(signature, baseString.toString());
+    }
+
+    /** The name with which this method was constructed by newMethod. */
+    private String name;
+
     private String consumerSecret;
 
     private String tokenSecret;
 
+    /** Whether this object may be shared, in which case it's immutable. */
+    private volatile boolean frozen = false;
+
+    /**
+     * The consumer's getPropertiesVersion() when getSigner constructed this
+     * object.
+     */
+    private int consumerVersion;
+
+    /** The name with which this method was constructed, such as "HMAC-SHA1". */
+    public String getName() {
+        return name;
+    }
+
     protected String getConsumerSecret() {
         return consumerSecret;
     }
 
+    /**
+     * @throws IllegalStateException
+     *             this object came from getSigner, which means it may be
+     *             shared, so it can't be changed
+     */
     protected void setConsumerSecret(String consumerSecret) {
+        checkNotFrozen();
         this.consumerSecret = consumerSecret;
     }
 
@@ -133,12 +250,34 @@ public abstract class OAuthSignatureMethod {
         return tokenSecret;
     }
 
+    /**
+     * @throws IllegalStateException
+     *             this object came from getSigner, which means it may be
+     *             shared, so it can't be changed
+     */
     public void setTokenSecret(String tokenSecret) {
+        checkNotFrozen();
         this.tokenSecret = tokenSecret;
     }
 
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException(name
+                    + " is shared, so it can't be changed. Use newSigner to get one that can.");
+        }
+    }
+
     public static String getBaseString(OAuthMessage message)
             throws IOException, URISyntaxException {
+        return newBaseString(message).toString();
+    }
+
+    /**
+     * Construct the signature base string of the given message, in a form
+     * that can be fed to a Mac or Signature without constructing a String.
+     */
+    public static SignatureBaseString newBaseString(OAuthMessage message)
+            throws IOException, URISyntaxException {
         List<Map.Entry<String, String>> parameters;
         String url = message.URL;
         int q = url.indexOf('?');
@@ -147,13 +286,75 @@ public abstract class OAuthSignatureMethod {
         } else {
             // Combine the URL query string with the other parameters:
             parameters = new ArrayList<Map.Entry<String, String>>();
-            parameters.addAll(OAuth.decodeForm(message.URL.substring(q + 1)));
+            parameters.addAll(OAuth.decodeForm(CharBuffer.wrap(url, q + 1, url.length())));
             parameters.addAll(message.getParameters());
             url = url.substring(0, q);
         }
-        return OAuth.percentEncode(message.method.toUpperCase()) + '&'
-                + OAuth.percentEncode(normalizeUrl(url)) + '&'
-                + OAuth.percentEncode(normalizeParameters(parameters));
+        return new SignatureBaseString(getPrefix(message.method, url),
+                ParameterNormalizer.sort(parameters));
+    }
+
+    /**
+     * Get the beginning of a base string, which contains the encoded HTTP
+     * method and normalized URL. It's cached, since most applications use
+     * relatively few distinct URLs.
+     *
+     * @param url
+     *            the URL, without a query string
+     */
+    static byte[] getPrefix(String httpMethod, String url)
+            throws URISyntaxException {
+        PrefixKey key = new PrefixKey(httpMethod, url);
+        byte[] prefix = PREFIXES.get(key);
+        if (prefix == null) {
+            StringBuilder p = new StringBuilder();
+            OAuth.percentEncode(httpMethod.toUpperCase(), p).append('&');
+            OAuth.percentEncode(normalizeUrl(url), p).append('&');
+            prefix = toASCII(p);
+            PREFIXES.put(key, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * The cache of base string prefixes, keyed by HTTP method and URL. Its
+     * statistics indicate whether the capacity suits the application.
+     */
+    public static LRUCache<?, byte[]> getPrefixCache() {
+        return PREFIXES;
+    }
+
+    private static final LRUCache<PrefixKey, byte[]> PREFIXES = new LRUCache<PrefixKey, byte[]>(
+            1024);
+
+    private static class PrefixKey {
+
+        PrefixKey(String httpMethod, String url) {
+            this.httpMethod = httpMethod;
+            this.url = url;
+            this.hashCode = 31 * httpMethod.hashCode() + url.hashCode();
+        }
+
+        private final String httpMethod;
+
+        private final String url;
+
+        private final int hashCode;
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PrefixKey)) {
+                return false;
+            }
+            PrefixKey that = (PrefixKey) obj;
+            return hashCode == that.hashCode && url.equals(that.url)
+                    && httpMethod.equals(that.httpMethod);
+        }
     }
 
     protected static String normalizeUrl(String url) throws URISyntaxException {
@@ -182,15 +383,16 @@ public abstract class OAuthSignatureMethod {
         if (parameters == null) {
             return "";
         }
-        List<ComparableParameter> p = new ArrayList<ComparableParameter>(
-                parameters.size());
-        for (Map.Entry parameter : parameters) {
-            if (!"oauth_signature".equals(parameter.getKey())) {
-                p.add(new ComparableParameter(parameter));
-            }
+        return OAuth.formEncode(ParameterNormalizer.sort(parameters));
+    }
+
+    static byte[] toASCII(CharSequence from) {
+        final int length = from.length();
+        byte[] into = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            into[i] = (byte) from.charAt(i);
         }
-        Collections.sort(p);
-        return OAuth.formEncode(getParameters(p));
+        return into;
     }
 
     /**
@@ -237,34 +439,15 @@ public abstract class OAuthSignatureMethod {
         return diff == 0;
     }
 
+    /** Decode base64, as specified by Base64Codec.decode. */
     public static byte[] decodeBase64(String s) {
-	byte[] b;
-	try {
-	    b = s.getBytes(BASE64_ENCODING);
-	} catch (UnsupportedEncodingException e) {
-	    System.err.println(e + "");
-	    b = s.getBytes();
-	}
-	return BASE64.decode(b);
+        return Base64Codec.decode(s);
     }
 
     public static String base64Encode(byte[] b) {
-	byte[] b2 = BASE64.encode(b);
-	try {
-	    return new String(b2, BASE64_ENCODING);
-	} catch (UnsupportedEncodingException e) {
-	    System.err.println(e + "");
-	}
-	return new String(b2);
+        return Base64Codec.encode(b);
     }
 
-    /**
-     * The character encoding used for base64. Arguably US-ASCII is more
-     * accurate, but this one decodes all byte values unambiguously.
-     */
-    private static final String BASE64_ENCODING = "ISO-8859-1";
-    private static final Base64 BASE64 = new Base64();
-
     public static OAuthSignatureMethod newSigner(OAuthMessage message,
             OAuthAccessor accessor) throws IOException, OAuthException {
         message.requireParameters(OAuth.OAUTH_SIGNATURE_METHOD);
@@ -274,101 +457,220 @@ public abstract class OAuthSignatureMethod {
         return signer;
     }
 
+    /**
+     * Get a signature method for the given message and accessor. Unlike
+     * newSigner, this returns an object that may be shared: it's cached in
+     * the accessor and used again for subsequent messages with the same
+     * signature method and token secret. It's immutable, and safe for
+     * concurrent use.
+     * <p>
+     * The cached signer is discarded when a property of the accessor or its
+     * consumer is set. A method whose class was registered by
+     * registerMethodClass isn't required to be thread-safe, so it's not
+     * cached or shared; this returns a new object each time, like newSigner.
+     */
+    public static OAuthSignatureMethod getSigner(OAuthMessage message,
+            OAuthAccessor accessor) throws IOException, OAuthException {
+        message.requireParameters(OAuth.OAUTH_SIGNATURE_METHOD);
+        final String name = message.getSignatureMethod();
+        if (NAME_TO_FACTORY.get(name) instanceof ClassFactory) {
+            return newSigner(message, accessor);
+        }
+        final int consumerVersion = getPropertiesVersion(accessor.consumer);
+        OAuthSignatureMethod signer = accessor.getSigner();
+        if (signer == null || !name.equals(signer.name)
+                || !equalsNullable(accessor.tokenSecret, signer.tokenSecret)
+                || consumerVersion != signer.consumerVersion) {
+            signer = newMethod(name, accessor);
+            signer.setTokenSecret(accessor.tokenSecret);
+            signer.consumerVersion = consumerVersion;
+            signer.frozen = true;
+            accessor.setSigner(signer);
+        }
+        return signer;
+    }
+
+    private static int getPropertiesVersion(OAuthConsumer consumer) {
+        return (consumer == null) ? 0 : consumer.getPropertiesVersion();
+    }
+
     /** The factory for signature methods. */
     public static OAuthSignatureMethod newMethod(String name,
             OAuthAccessor accessor) throws OAuthException {
-        try {
-            Class methodClass = NAME_TO_CLASS.get(name);
-            if (methodClass != null) {
-                OAuthSignatureMethod method = (OAuthSignatureMethod) methodClass
-                .newInstance();
-                method.initialize(name, accessor);
-                return method;
-            }
-            OAuthProblemException problem = new OAuthProblemException(OAuth.Problems.SIGNATURE_METHOD_REJECTED);
-            String acceptable = OAuth.percentEncode(NAME_TO_CLASS.keySet());
-            if (acceptable.length() > 0) {
-                problem.setParameter("oauth_acceptable_signature_methods",
-                        acceptable.toString());
-            }
-            throw problem;
-        } catch (InstantiationException e) {
-            throw new OAuthException(e);
-        } catch (IllegalAccessException e) {
-            throw new OAuthException(e);
+        OAuthSignatureMethodFactory factory = NAME_TO_FACTORY.get(name);
+        if (factory != null) {
+            OAuthSignatureMethod method = factory.newInstance(name);
+            method.name = name;
+            method.initialize(name, accessor);
+            return method;
+        }
+        OAuthProblemException problem = new OAuthProblemException(OAuth.Problems.SIGNATURE_METHOD_REJECTED);
+        String acceptable = OAuth.percentEncode(NAME_TO_FACTORY.keySet());
+        if (acceptable.length() > 0) {
+            problem.setParameter("oauth_acceptable_signature_methods",
+                    acceptable.toString());
+        }
+        throw problem;
+    }
+
+    /** The names of the signature methods that newMethod can construct. */
+    public static Collection<String> getMethodNames() {
+        return Collections.unmodifiableSet(NAME_TO_FACTORY.keySet());
+    }
+
+    /**
+     * Subsequently, newMethod(name) will use the given factory, for each name
+     * in factory.getMethodNames().
+     */
+    public static void registerMethodFactory(OAuthSignatureMethodFactory factory) {
+        for (String name : factory.getMethodNames()) {
+            NAME_TO_FACTORY.put(name, factory);
         }
     }
 
     /**
      * Subsequently, newMethod(name) will attempt to instantiate the given
-     * class, with no constructor parameters.
+     * class, with no constructor parameters. This is supported for
+     * compatibility; registerMethodFactory avoids reflection.
      */
     public static void registerMethodClass(String name, Class clazz) {
         if (clazz == null)
             unregisterMethod(name);
         else
-            NAME_TO_CLASS.put(name, clazz);
+            registerMethodFactory(new ClassFactory(name, clazz));
     }
 
     /**
      * Subsequently, newMethod(name) will fail.
      */
     public static void unregisterMethod(String name) {
-        NAME_TO_CLASS.remove(name);
+        NAME_TO_FACTORY.remove(name);
     }
 
-    private static final Map<String, Class> NAME_TO_CLASS = new ConcurrentHashMap<String, Class>();
-    static {
-        registerMethodClass("HMAC-SHA1", HMAC_SHA1.class);
-        registerMethodClass("PLAINTEXT", PLAINTEXT.class);
-        registerMethodClass("RSA-SHA1", RSA_SHA1.class);
-        registerMethodClass("HMAC-SHA1" + _ACCESSOR, HMAC_SHA1.class);
-        registerMethodClass("PLAINTEXT" + _ACCESSOR, PLAINTEXT.class);
-    }
-
-    /** An efficiently sortable wrapper around a parameter. */
-    private static class ComparableParameter implements
-            Comparable<ComparableParameter> {
-
-        ComparableParameter(Map.Entry value) {
-            this.value = value;
-            String n = toString(value.getKey());
-            String v = toString(value.getValue());
-            this.key = OAuth.percentEncode(n) + ' ' + OAuth.percentEncode(v);
-            // ' ' is used because it comes before any character
-            // that can appear in a percentEncoded string.
+    /**
+     * Register the factories that are listed in resources named
+     * META-INF/services/net.oauth.signature.OAuthSignatureMethodFactory,
+     * like java.util.ServiceLoader. This is done automatically when this
+     * class is loaded (see getLoadFailures); an application may call it
+     * again, for example with a class loader that wasn't available then. A
+     * factory that can't be loaded doesn't prevent loading the others.
+     *
+     * @return the reasons that factories couldn't be loaded, or an empty
+     *         list if there were none
+     */
+    public static List<Exception> loadMethodFactories(ClassLoader loader) {
+        final String resource = "META-INF/services/" + OAuthSignatureMethodFactory.class.getName();
+        List<Exception> failures = new ArrayList<Exception>();
+        try {
+            for (Enumeration<URL> urls = loader.getResources(resource); urls.hasMoreElements();) {
+                URL url = urls.nextElement();
+                BufferedReader in = new BufferedReader(new InputStreamReader(url.openStream(),
+                        CharsetCodec.UTF_8));
+                try {
+                    for (String line; (line = in.readLine()) != null;) {
+                        int comment = line.indexOf('#');
+                        String className = ((comment < 0) ? line : line.substring(0, comment)).trim();
+                        if (className.length() > 0) {
+                            try {
+                                registerMethodFactory((OAuthSignatureMethodFactory) Class.forName(
+                                        className, true, loader).getDeclaredConstructor()
+                                        .newInstance());
+                            } catch (InvocationTargetException e) {
+                                failures.add(new IllegalArgumentException(url + ": " + className,
+                                        e.getCause()));
+                            } catch (Exception e) {
+                                failures.add(new IllegalArgumentException(url + ": " + className, e));
+                            }
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException e) {
+            failures.add(e);
         }
+        return failures;
+    }
 
-        final Map.Entry value;
+    /**
+     * The reasons that factories listed in META-INF/services couldn't be
+     * loaded when this class was loaded, or an empty list if there were none.
+     */
+    public static List<Exception> getLoadFailures() {
+        return LOAD_FAILURES;
+    }
 
-        private final String key;
+    private static boolean equalsNullable(String x, String y) {
+        return (x == null) ? (y == null) : x.equals(y);
+    }
 
-        private static String toString(Object from) {
-            return (from == null) ? null : from.toString();
+    /** Constructs the standard signature methods. */
+    private static class StandardFactory implements OAuthSignatureMethodFactory {
+
+        public Collection<String> getMethodNames() {
+            List<String> names = new ArrayList<String>(Arrays.asList(
+                    "HMAC-SHA1", "PLAINTEXT", "RSA-SHA1",
+                    "HMAC-SHA1" + _ACCESSOR, "PLAINTEXT" + _ACCESSOR));
+            if (Ed25519.isSupported()) {
+                names.add(OAuth.ED25519);
+            }
+            return names;
         }
 
-        public int compareTo(ComparableParameter that) {
-            return this.key.compareTo(that.key);
+        public OAuthSignatureMethod newInstance(String name) {
+            if (name.startsWith("HMAC-SHA1")) {
+                return new HMAC_SHA1();
+            } else if (name.startsWith("PLAINTEXT")) {
+                return new PLAINTEXT();
+            } else if (name.equals(OAuth.ED25519)) {
+                return new Ed25519();
+            } else {
+                return new RSA_SHA1();
+            }
         }
+    }
 
-        @Override
-        public String toString() {
-            return key;
+    /** Constructs signature methods by reflection, for registerMethodClass. */
+    private static class ClassFactory implements OAuthSignatureMethodFactory {
+
+        ClassFactory(String name, Class<?> methodClass) {
+            this.name = name;
+            this.methodClass = methodClass;
         }
 
-    }
+        private final String name;
 
-    /** Retrieve the original parameters from a sorted collection. */
-    private static List<Map.Entry> getParameters(
-            Collection<ComparableParameter> parameters) {
-        if (parameters == null) {
-            return null;
+        private final Class<?> methodClass;
+
+        public Collection<String> getMethodNames() {
+            return Collections.singleton(name);
+        }
+
+        public OAuthSignatureMethod newInstance(String name) throws OAuthException {
+            try {
+                return (OAuthSignatureMethod) methodClass.getDeclaredConstructor().newInstance();
+            } catch (InvocationTargetException e) {
+                throw new OAuthException(e.getCause());
+            } catch (NoSuchMethodException e) {
+                throw new OAuthException(e);
+            } catch (InstantiationException e) {
+                throw new OAuthException(e);
+            } catch (IllegalAccessException e) {
+                throw new OAuthException(e);
+            }
         }
-        List<Map.Entry> list = new ArrayList<Map.Entry>(parameters.size());
-        for (ComparableParameter parameter : parameters) {
-            list.add(parameter.value);
+    }
+
+    private static final Map<String, OAuthSignatureMethodFactory> NAME_TO_FACTORY = new ConcurrentHashMap<String, OAuthSignatureMethodFactory>();
+    private static final List<Exception> LOAD_FAILURES;
+    static {
+        registerMethodFactory(new StandardFactory());
+        ClassLoader loader = OAuthSignatureMethod.class.getClassLoader();
+        if (loader == null) {
+            loader = ClassLoader.getSystemClassLoader();
         }
-        return list;
+        LOAD_FAILURES = Collections.unmodifiableList(loadMethodFactories(loader));
     }
 
 }
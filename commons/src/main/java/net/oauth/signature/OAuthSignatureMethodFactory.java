@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.Collection;
+
+import net.oauth.OAuthException;
+
+/**
+ * Constructs signature methods. Factories are registered with
+ * OAuthSignatureMethod.registerMethodFactory; or listed (one class name per
+ * line) in a resource named
+ * META-INF/services/net.oauth.signature.OAuthSignatureMethodFactory, in which
+ * case they're registered when OAuthSignatureMethod is loaded. A factory
+ * listed in a resource must be a public class with a public constructor that
+ * has no parameters.
+ */
+public interface OAuthSignatureMethodFactory {
+
+    /** The names of the signature methods that this factory constructs. */
+    Collection<String> getMethodNames();
+
+    /**
+     * Construct a signature method, which the caller will initialize. The
+     * method may be cached and shared by OAuthSignatureMethod.getSigner, so
+     * once it's initialized it must be safe for concurrent use.
+     *
+     * @param name
+     *            one of getMethodNames()
+     */
+    OAuthSignatureMethod newInstance(String name) throws OAuthException;
+
+}
@@ -37,6 +37,18 @@ class PLAINTEXT extends OAuthSignatureMethod {
         return equals(getSignature(), signature);
     }
 
+    /** The base string doesn't matter, so don't bother to construct it. */
+    @Override
+    protected String getSignature(SignatureBaseString baseString) {
+        return getSignature();
+    }
+
+    @Override
+    protected boolean isValid(String signature, SignatureBaseString baseString)
+            throws OAuthException {
+        return equals(getSignature(), signature);
+    }
+
     private synchronized String getSignature() {
         if (signature == null) {
             signature = OAuth.percentEncode(getConsumerSecret()) + '&'
@@ -49,18 +61,18 @@ class PLAINTEXT extends OAuthSignatureMethod {
 
     @Override
     public void setConsumerSecret(String consumerSecret) {
+        super.setConsumerSecret(consumerSecret);
         synchronized (this) {
             signature = null;
         }
-        super.setConsumerSecret(consumerSecret);
     }
 
     @Override
     public void setTokenSecret(String tokenSecret) {
+        super.setTokenSecret(tokenSecret);
         synchronized (this) {
             signature = null;
         }
-        super.setTokenSecret(tokenSecret);
     }
 
 }
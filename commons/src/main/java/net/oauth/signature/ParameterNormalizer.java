@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import net.oauth.EncodedParameter;
+
+/**
+ * Sorts parameters into the order specified for a <a
+ * href="http://oauth.net/core/1.0a#anchor13">signature base string</a>:
+ * by encoded name, and then by encoded value. Each parameter is encoded once
+ * (and the encoding is cached in its EncodedParameter); then an array of
+ * indexes is sorted by comparing the encoded bytes, unsigned. Input that's
+ * already in order is recognized in linear time, and isn't sorted.
+ * <p>
+ * The sort is stable, although that doesn't matter to the result: parameters
+ * that compare equal are identical in the base string.
+ */
+class ParameterNormalizer {
+
+    /**
+     * Sort the given parameters into their normalized order, omitting
+     * oauth_signature.
+     */
+    static List<EncodedParameter> sort(Collection<? extends Map.Entry> parameters) {
+        return new ParameterNormalizer(parameters).getSorted();
+    }
+
+    /** Merge two lists that are already in normalized order. */
+    static List<EncodedParameter> merge(List<EncodedParameter> x,
+            List<EncodedParameter> y) {
+        final int xSize = x.size();
+        final int ySize = y.size();
+        EncodedParameter[] merged = new EncodedParameter[xSize + ySize];
+        int i = 0, j = 0, m = 0;
+        while (i < xSize && j < ySize) {
+            EncodedParameter a = x.get(i);
+            EncodedParameter b = y.get(j);
+            if (compare(a, b) <= 0) {
+                merged[m++] = a;
+                ++i;
+            } else {
+                merged[m++] = b;
+                ++j;
+            }
+        }
+        while (i < xSize) {
+            merged[m++] = x.get(i++);
+        }
+        while (j < ySize) {
+            merged[m++] = y.get(j++);
+        }
+        return Arrays.asList(merged);
+    }
+
+    static int compare(EncodedParameter x, EncodedParameter y) {
+        int c = compare(x.getEncodedKey(), y.getEncodedKey());
+        return (c != 0) ? c : compare(x.getEncodedValue(), y.getEncodedValue());
+    }
+
+    ParameterNormalizer(Collection<? extends Map.Entry> parameters) {
+        final int capacity = parameters.size();
+        this.parameters = new EncodedParameter[capacity];
+        keys = new byte[capacity][];
+        values = new byte[capacity][];
+        int n = 0;
+        for (Map.Entry parameter : parameters) {
+            if (!"oauth_signature".equals(parameter.getKey())) {
+                EncodedParameter p = EncodedParameter.of(parameter);
+                this.parameters[n] = p;
+                keys[n] = p.getEncodedKey();
+                values[n] = p.getEncodedValue();
+                ++n;
+            }
+        }
+        size = n;
+    }
+
+    private final EncodedParameter[] parameters;
+
+    private final byte[][] keys;
+
+    private final byte[][] values;
+
+    private final int size;
+
+    /** The parameters in normalized order. */
+    List<EncodedParameter> getSorted() {
+        EncodedParameter[] sorted;
+        if (isSorted()) {
+            sorted = (size == parameters.length) ? parameters
+                    : copyOf(parameters, size);
+        } else {
+            int[] index = new int[size];
+            for (int i = 0; i < size; ++i) {
+                index[i] = i;
+            }
+            mergeSort(index.clone(), index, 0, size);
+            sorted = new EncodedParameter[size];
+            for (int i = 0; i < size; ++i) {
+                sorted[i] = parameters[index[i]];
+            }
+        }
+        return Arrays.asList(sorted);
+    }
+
+    private boolean isSorted() {
+        for (int i = 1; i < size; ++i) {
+            if (compare(i - 1, i) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sort dest[low, high), using src[low, high) as scratch space. Both
+     * arrays contain the same indexes on entry.
+     */
+    private void mergeSort(int[] src, int[] dest, int low, int high) {
+        final int length = high - low;
+        if (length < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; ++i) {
+                int x = dest[i];
+                int j = i;
+                for (; j > low && compare(dest[j - 1], x) > 0; --j) {
+                    dest[j] = dest[j - 1];
+                }
+                dest[j] = x;
+            }
+            return;
+        }
+        final int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid);
+        mergeSort(dest, src, mid, high);
+        if (compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+            return;
+        }
+        for (int i = low, p = low, q = mid; i < high; ++i) {
+            if (q >= high || (p < mid && compare(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    private int compare(int x, int y) {
+        int c = compare(keys[x], keys[y]);
+        return (c != 0) ? c : compare(values[x], values[y]);
+    }
+
+    /** Compare byte strings lexicographically, as unsigned bytes. */
+    static int compare(byte[] x, byte[] y) {
+        final int length = Math.min(x.length, y.length);
+        for (int i = 0; i < length; ++i) {
+            if (x[i] != y[i]) {
+                return (x[i] & 0xFF) - (y[i] & 0xFF);
+            }
+        }
+        // A name comes before any longer name that it's a prefix of.
+        return x.length - y.length;
+    }
+
+    private static EncodedParameter[] copyOf(EncodedParameter[] from, int length) {
+        EncodedParameter[] into = new EncodedParameter[length];
+        System.arraycopy(from, 0, into, 0, length);
+        return into;
+    }
+
+    private static final int INSERTION_SORT_THRESHOLD = 8;
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.oauth.CharsetCodec;
+import net.oauth.OAuthException;
+
+/**
+ * Public keys and certificates of many consumers, found by consumer key. The
+ * keys are PEM encoded, in either:
+ * <ul>
+ * <li>a directory containing a file named [consumer key].pem for each
+ * consumer; or</li>
+ * <li>a bundle file, in which each PEM block is preceded by a line
+ * "oauth_consumer_key: [consumer key]". Other lines outside PEM blocks are
+ * ignored.</li>
+ * </ul>
+ * Constructing a repository only builds an index of the consumer keys, which
+ * is a sorted array. A bundle file is memory-mapped, and indexed by the
+ * offsets of its PEM blocks. Each key is parsed when it's first used, and
+ * kept in a bounded cache. Changes to the directory or bundle after the
+ * repository is constructed are not seen.
+ * <p>
+ * A service provider can use a repository as the value of the public key
+ * property (for example RSA_SHA1.PUBLIC_KEY) of its consumers. A message from
+ * a consumer that's not in the repository is rejected with problem
+ * consumer_key_unknown. A repository is safe for concurrent use.
+ */
+public abstract class PublicKeyRepository {
+
+    /** The suffix of the files in a directory. */
+    public static final String PEM_SUFFIX = ".pem";
+
+    /** Precedes a consumer key in a bundle file. */
+    public static final String CONSUMER_KEY_LINE = "oauth_consumer_key:";
+
+    /**
+     * Index the [consumer key].pem files in the given directory.
+     *
+     * @param keyAlgorithm
+     *            the algorithm of the public keys, as named by KeyFactory;
+     *            for example "RSA"
+     * @param cacheCapacity
+     *            the approximate number of parsed keys to retain
+     */
+    public static PublicKeyRepository fromDirectory(final File directory,
+            String keyAlgorithm, int cacheCapacity) throws IOException {
+        String[] names = directory.list(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(PEM_SUFFIX) && name.length() > PEM_SUFFIX.length();
+            }
+        });
+        if (names == null) {
+            throw new IOException("not a directory: " + directory);
+        }
+        final String[] consumerKeys = new String[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            consumerKeys[i] = names[i].substring(0, names[i].length() - PEM_SUFFIX.length());
+        }
+        Arrays.sort(consumerKeys);
+        return new PublicKeyRepository(consumerKeys, keyAlgorithm, cacheCapacity) {
+            @Override
+            protected String getPEM(int index) throws IOException {
+                File file = new File(directory, consumerKeys[index] + PEM_SUFFIX);
+                InputStream in = new FileInputStream(file);
+                try {
+                    byte[] pem = new byte[(int) file.length()];
+                    int n = 0;
+                    for (int r; n < pem.length && (r = in.read(pem, n, pem.length - n)) >= 0;) {
+                        n += r;
+                    }
+                    return CharsetCodec.decode(pem, 0, n, CharsetCodec.ISO_8859_1);
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Index the PEM blocks in the given bundle file. If a consumer key occurs
+     * more than once, the last block is used.
+     *
+     * @param keyAlgorithm
+     *            the algorithm of the public keys, as named by KeyFactory;
+     *            for example "RSA"
+     * @param cacheCapacity
+     *            the approximate number of parsed keys to retain
+     */
+    public static PublicKeyRepository fromBundle(File bundle, String keyAlgorithm,
+            int cacheCapacity) throws IOException {
+        final ByteBuffer mapped;
+        RandomAccessFile file = new RandomAccessFile(bundle, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("bundle is too big: " + bundle);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            file.close(); // The mapping remains valid.
+        }
+        List<Block> blocks = indexBundle(mapped);
+        // Sort by consumer key. The sort is stable, so the last of several
+        // blocks with the same key comes last.
+        Collections.sort(blocks, new Comparator<Block>() {
+            public int compare(Block x, Block y) {
+                return x.consumerKey.compareTo(y.consumerKey);
+            }
+        });
+        int size = 0;
+        for (int b = 0; b < blocks.size(); ++b) {
+            if (b + 1 == blocks.size()
+                    || !blocks.get(b).consumerKey.equals(blocks.get(b + 1).consumerKey)) {
+                blocks.set(size++, blocks.get(b));
+            }
+        }
+        final String[] consumerKeys = new String[size];
+        final int[] starts = new int[size];
+        final int[] ends = new int[size];
+        for (int b = 0; b < size; ++b) {
+            Block block = blocks.get(b);
+            consumerKeys[b] = block.consumerKey;
+            starts[b] = block.start;
+            ends[b] = block.end;
+        }
+        return new PublicKeyRepository(consumerKeys, keyAlgorithm, cacheCapacity) {
+            @Override
+            protected String getPEM(int index) {
+                ByteBuffer pem = mapped.duplicate();
+                pem.limit(ends[index]).position(starts[index]);
+                byte[] bytes = new byte[pem.remaining()];
+                pem.get(bytes);
+                return CharsetCodec.decode(bytes, 0, bytes.length, CharsetCodec.ISO_8859_1);
+            }
+        };
+    }
+
+    /**
+     * @param consumerKeys
+     *            sorted, without duplicates
+     */
+    protected PublicKeyRepository(String[] consumerKeys, String keyAlgorithm,
+            int cacheCapacity) {
+        this.consumerKeys = consumerKeys;
+        this.keyAlgorithm = keyAlgorithm;
+        this.cache = new LRUCache<String, PublicKey>(cacheCapacity);
+    }
+
+    private final String[] consumerKeys;
+
+    private final String keyAlgorithm;
+
+    private final LRUCache<String, PublicKey> cache;
+
+    /** The number of consumer keys. */
+    public int size() {
+        return consumerKeys.length;
+    }
+
+    /** All the consumer keys, in order. */
+    public List<String> getConsumerKeys() {
+        return Collections.unmodifiableList(Arrays.asList(consumerKeys));
+    }
+
+    public boolean contains(String consumerKey) {
+        return consumerKey != null && Arrays.binarySearch(consumerKeys, consumerKey) >= 0;
+    }
+
+    /**
+     * Get the public key of the given consumer, parsing it if it's not in the
+     * cache.
+     *
+     * @return the key, or null if there's no key for that consumer
+     * @throws OAuthException
+     *             the key couldn't be read or parsed
+     */
+    public PublicKey getPublicKey(String consumerKey) throws OAuthException {
+        if (consumerKey == null) {
+            return null;
+        }
+        PublicKey key = cache.get(consumerKey);
+        if (key == null) {
+            int index = Arrays.binarySearch(consumerKeys, consumerKey);
+            if (index < 0) {
+                return null;
+            }
+            try {
+                key = PublicKeySignatureMethod.getPublicKeyFromPem(getPEM(index), keyAlgorithm);
+            } catch (GeneralSecurityException e) {
+                throw new OAuthException(consumerKey + ": " + e, e);
+            } catch (IOException e) {
+                throw new OAuthException(consumerKey + ": " + e, e);
+            }
+            cache.put(consumerKey, key);
+        }
+        return key;
+    }
+
+    /** The cache of parsed keys, so its statistics can be monitored. */
+    public LRUCache<String, PublicKey> getCache() {
+        return cache;
+    }
+
+    /** Get the PEM encoding of the key of consumerKeys[index]. */
+    protected abstract String getPEM(int index) throws IOException;
+
+    /** The location of a PEM block in a bundle. */
+    private static class Block {
+
+        Block(String consumerKey, int start, int end) {
+            this.consumerKey = consumerKey;
+            this.start = start;
+            this.end = end;
+        }
+
+        final String consumerKey;
+
+        final int start;
+
+        final int end;
+    }
+
+    private static final byte[] BEGIN = CharsetCodec.encode("-----BEGIN ",
+            CharsetCodec.ISO_8859_1);
+
+    private static final byte[] END = CharsetCodec.encode("-----END ",
+            CharsetCodec.ISO_8859_1);
+
+    private static final byte[] KEY_LINE = CharsetCodec.encode(CONSUMER_KEY_LINE,
+            CharsetCodec.ISO_8859_1);
+
+    /** Find the PEM blocks in a bundle, by scanning it line by line. */
+    private static List<Block> indexBundle(ByteBuffer bundle) throws IOException {
+        List<Block> blocks = new ArrayList<Block>();
+        final int limit = bundle.limit();
+        String consumerKey = null;
+        int start = -1;
+        for (int line = 0; line < limit;) {
+            int next = line;
+            while (next < limit && bundle.get(next) != '\n') {
+                ++next;
+            }
+            final int lineEnd = next;
+            if (next < limit) {
+                ++next; // past the '\n'
+            }
+            if (start < 0) {
+                if (startsWith(bundle, line, lineEnd, KEY_LINE)) {
+                    byte[] key = new byte[lineEnd - line - KEY_LINE.length];
+                    for (int i = 0; i < key.length; ++i) {
+                        key[i] = bundle.get(line + KEY_LINE.length + i);
+                    }
+                    consumerKey = CharsetCodec.decode(key, 0, key.length,
+                            CharsetCodec.UTF_8).trim();
+                } else if (startsWith(bundle, line, lineEnd, BEGIN)) {
+                    if (consumerKey == null) {
+                        throw new IOException("PEM block at offset " + line + " has no "
+                                + CONSUMER_KEY_LINE);
+                    }
+                    start = line;
+                }
+            } else if (startsWith(bundle, line, lineEnd, END)) {
+                blocks.add(new Block(consumerKey, start, next));
+                consumerKey = null;
+                start = -1;
+            }
+            line = next;
+        }
+        if (start >= 0) {
+            throw new IOException("PEM block at offset " + start + " has no end");
+        }
+        return blocks;
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (bytes.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
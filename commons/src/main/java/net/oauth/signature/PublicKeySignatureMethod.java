@@ -0,0 +1,416 @@
+/*
+ * Copyright 2007 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.EncodedKeySpec;
+import java.security.spec.KeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+import net.oauth.CharsetCodec;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthException;
+import net.oauth.OAuthProblemException;
+import net.oauth.signature.pem.PEMReader;
+import net.oauth.signature.pem.PKCS1EncodedKeySpec;
+
+/**
+ * A signature method that uses a public/private key pair, such as RSA-SHA1.
+ * A consumer signs with its private key, and a service provider verifies
+ * with the consumer's public key or certificate. The keys are found in
+ * consumer properties, whose names are given by the subclass. A key may be
+ * given as a PrivateKey, PublicKey or X509Certificate object; or encoded, as
+ * a PEM String or a DER byte[]. Encoded keys are parsed once and cached in
+ * the consumer, until one of its properties is set.
+ * The public key property may also be a PublicKeyRepository, in which the
+ * key is looked up by the consumer key.
+ */
+public abstract class PublicKeySignatureMethod extends OAuthSignatureMethod {
+    /**
+     * @param keyAlgorithm
+     *            the algorithm of the keys, for KeyFactory.getInstance
+     * @param signatureAlgorithm
+     *            the algorithm for Signature.getInstance
+     * @param privateKeyProperty
+     *            the name of the consumer property that contains the
+     *            private key
+     * @param publicKeyProperty
+     *            the name of the consumer property that contains the public
+     *            key
+     * @param certificateProperty
+     *            the name of the consumer property that contains a
+     *            certificate, which is used if there's no public key
+     */
+    protected PublicKeySignatureMethod(String keyAlgorithm,
+            String signatureAlgorithm, String privateKeyProperty,
+            String publicKeyProperty, String certificateProperty) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.privateKeyProperty = privateKeyProperty;
+        this.publicKeyProperty = publicKeyProperty;
+        this.certificateProperty = certificateProperty;
+    }
+
+    private final String keyAlgorithm;
+    private final String signatureAlgorithm;
+    private final String privateKeyProperty;
+    private final String publicKeyProperty;
+    private final String certificateProperty;
+
+    private PrivateKey privateKey = null;
+    private PublicKey publicKey = null;
+
+    /** The algorithm of the keys, as named by KeyFactory. */
+    String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    String getPrivateKeyProperty() {
+        return privateKeyProperty;
+    }
+
+    String getPublicKeyProperty() {
+        return publicKeyProperty;
+    }
+    
+    @Override
+    protected void initialize(String name, OAuthAccessor accessor)
+    throws OAuthException {
+        super.initialize(name, accessor);
+
+        // Due to the support of PEM input stream, the keys must be cached. 
+        // The stream may not be markable so it can't be read again.
+        // Parsed keys are also cached in the consumer, to avoid parsing
+        // them again for each message.
+        final OAuthConsumer consumer = accessor.consumer;
+        try {
+            Object privateKeyObject = consumer.getProperty(privateKeyProperty);
+            if (privateKeyObject != null) {
+                privateKey = (PrivateKey) getKey(consumer, privateKeyProperty,
+                        privateKeyObject, true, false);
+            }
+
+            boolean isCert = false;
+            Object publicKeyObject = consumer.getProperty(publicKeyProperty);
+            if (publicKeyObject == null) {
+                // public key was null. perhaps they gave us a X509 cert.
+                isCert = true;
+                publicKeyObject = consumer.getProperty(certificateProperty);
+            }
+            if (publicKeyObject instanceof PublicKeyRepository) {
+                publicKey = ((PublicKeyRepository) publicKeyObject)
+                        .getPublicKey(consumer.consumerKey);
+                if (publicKey == null) {
+                    OAuthProblemException problem = new OAuthProblemException(
+                            OAuth.Problems.CONSUMER_KEY_UNKNOWN);
+                    problem.setParameter(OAuth.OAUTH_CONSUMER_KEY, consumer.consumerKey);
+                    throw problem;
+                }
+            } else if (publicKeyObject != null) {
+                publicKey = (PublicKey) getKey(consumer,
+                        isCert ? certificateProperty : publicKeyProperty,
+                        publicKeyObject, false, isCert);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        } catch (IOException e) {
+            throw new OAuthException(e);
+        }
+    }
+
+    /**
+     * Get the key that was parsed from the given encoded property value and
+     * cached in the consumer, or parse it and cache it. Key and certificate
+     * objects (and streams, which can't be read again) aren't cached.
+     */
+    private Key getKey(OAuthConsumer consumer, String property, Object value,
+            boolean isPrivate, boolean isCert)
+    throws GeneralSecurityException, IOException {
+        final boolean encoded = (value instanceof String || value instanceof byte[]);
+        final int version = consumer.getPropertiesVersion();
+        Key key = encoded ? consumer.getParsedKey(property) : null;
+        if (key == null) {
+            key = isPrivate ? loadPrivateKey(value) : loadPublicKey(value, isCert);
+            if (encoded) {
+                consumer.setParsedKey(property, key, version);
+            }
+        }
+        return key;
+    }
+
+    private static PublicKey getPublicKeyFromDerCert(byte[] certObject)
+            throws GeneralSecurityException {
+        CertificateFactory fac = CertificateFactory.getInstance("X509");
+        ByteArrayInputStream in = new ByteArrayInputStream(certObject);
+        X509Certificate cert = (X509Certificate)fac.generateCertificate(in);
+        return cert.getPublicKey();
+    }
+
+    private PublicKey getPublicKeyFromDer(byte[] publicKeyObject)
+            throws GeneralSecurityException {
+        KeyFactory fac = KeyFactory.getInstance(keyAlgorithm);
+        EncodedKeySpec pubKeySpec = new X509EncodedKeySpec(publicKeyObject);
+        return fac.generatePublic(pubKeySpec);
+    }
+
+    private PublicKey getPublicKeyFromPem(String pem) 
+    throws GeneralSecurityException, IOException {
+        return getPublicKeyFromPem(pem, keyAlgorithm);
+    }
+
+    /**
+     * Parse a PEM encoded public key or X.509 certificate.
+     *
+     * @param keyAlgorithm
+     *            the algorithm of a public key, as named by KeyFactory
+     */
+    static PublicKey getPublicKeyFromPem(String pem, String keyAlgorithm)
+    throws GeneralSecurityException, IOException {
+
+        PEMReader reader = new PEMReader(new StringReader(pem));
+        byte[] bytes = reader.getDerBytes(); 	
+        PublicKey pubKey;
+
+        if (PEMReader.PUBLIC_X509_MARKER.equals(reader.getBeginMarker())) {
+            KeySpec keySpec = new X509EncodedKeySpec(bytes);
+            KeyFactory fac = KeyFactory.getInstance(keyAlgorithm);
+            pubKey = fac.generatePublic(keySpec);
+        } else if (PEMReader.CERTIFICATE_X509_MARKER.equals(reader.getBeginMarker())) {
+            pubKey = getPublicKeyFromDerCert(bytes);
+        } else {
+            throw new IOException("Invalid PEM fileL: Unknown marker for " + 
+                    " public key or cert " + reader.getBeginMarker());
+        }
+
+        return pubKey;
+    }
+
+    private PrivateKey getPrivateKeyFromDer(byte[] privateKeyObject)
+            throws GeneralSecurityException {
+        KeyFactory fac = KeyFactory.getInstance(keyAlgorithm);
+        EncodedKeySpec privKeySpec = new PKCS8EncodedKeySpec(privateKeyObject);
+        return fac.generatePrivate(privKeySpec);
+    }
+
+    private PrivateKey getPrivateKeyFromPem(String pem)
+    throws GeneralSecurityException, IOException {
+
+        PEMReader reader = new PEMReader(new StringReader(pem));
+        byte[] bytes = reader.getDerBytes();
+        KeySpec keySpec;
+
+        if (PEMReader.PRIVATE_PKCS1_MARKER.equals(reader.getBeginMarker())) {
+            keySpec = (new PKCS1EncodedKeySpec(bytes)).getKeySpec();
+        } else if (PEMReader.PRIVATE_PKCS8_MARKER.equals(reader.getBeginMarker())) {
+            keySpec = new PKCS8EncodedKeySpec(bytes);
+        } else {
+            throw new IOException("Invalid PEM file: Unknown marker " +
+                    "for private key " + reader.getBeginMarker());
+        }
+
+        KeyFactory fac = KeyFactory.getInstance(keyAlgorithm);
+        return fac.generatePrivate(keySpec);
+    }
+
+    @Override
+    protected String getSignature(String baseString) throws OAuthException {
+        try {
+            byte[] signature = sign(CharsetCodec.encode(baseString, CharsetCodec.UTF_8));
+            return base64Encode(signature);
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        }
+    }
+
+    @Override
+    protected boolean isValid(String signature, String baseString)
+            throws OAuthException {
+        try {
+            return verify(decodeBase64(signature),
+                          CharsetCodec.encode(baseString, CharsetCodec.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        }
+    }
+
+    @Override
+    protected String getSignature(SignatureBaseString baseString)
+            throws OAuthException {
+        try {
+            Signature signer = newSigner();
+            baseString.update(signer);
+            return base64Encode(signer.sign());
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        }
+    }
+
+    @Override
+    protected boolean isValid(String signature, SignatureBaseString baseString)
+            throws OAuthException {
+        try {
+            Signature verifier = newVerifier();
+            baseString.update(verifier);
+            return verifier.verify(decodeBase64(signature));
+        } catch (GeneralSecurityException e) {
+            throw new OAuthException(e);
+        }
+    }
+
+    private byte[] sign(byte[] message) throws GeneralSecurityException {
+        Signature signer = newSigner();
+        signer.update(message);
+        return signer.sign();
+    }
+
+    private boolean verify(byte[] signature, byte[] message)
+            throws GeneralSecurityException {
+        Signature verifier = newVerifier();
+        verifier.update(message);
+        return verifier.verify(signature);
+    }
+
+    private Signature newSigner() throws GeneralSecurityException {
+        if (privateKey == null) {
+            throw new IllegalStateException("need to set private key with " +
+                                            "OAuthConsumer.setProperty when " +
+                                            "generating " + getName() + " signatures.");
+        }
+        Signature signer = Signature.getInstance(signatureAlgorithm);
+        signer.initSign(privateKey);
+        return signer;
+    }
+
+    private Signature newVerifier() throws GeneralSecurityException {
+        if (publicKey == null) {
+            throw new IllegalStateException("need to set public key with " +
+                                            " OAuthConsumer.setProperty when " +
+                                            "verifying " + getName() + " signatures.");
+        }
+        Signature verifier = Signature.getInstance(signatureAlgorithm);
+        verifier.initVerify(publicKey);
+        return verifier;
+    }
+
+    /**
+     * Load private key from various sources, including
+     * <ul>
+     * <li>A PrivateKey object
+     * <li>A string buffer for PEM
+     * <li>A byte array with PKCS#8 encoded key
+     * </ul>
+     * @param privateKeyObject
+     * @return The private key
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    private PrivateKey loadPrivateKey(Object privateKeyObject) 
+    throws IOException, GeneralSecurityException {
+
+        PrivateKey privateKey;
+
+        if (privateKeyObject instanceof PrivateKey) {
+            privateKey = (PrivateKey)privateKeyObject;
+        } else if (privateKeyObject instanceof String) {
+            try {
+                // PEM Reader's native string constructor is for filename.
+                privateKey = getPrivateKeyFromPem((String)privateKeyObject);
+            } catch (IOException e) {
+                // Check if it's PEM with markers stripped
+                privateKey = getPrivateKeyFromDer(
+                        decodeBase64((String)privateKeyObject));
+            }
+        } else if (privateKeyObject instanceof byte[]) {
+            privateKey = getPrivateKeyFromDer((byte[])privateKeyObject);
+        } else {
+            throw new IllegalArgumentException(
+                    "Private key set through " + privateKeyProperty + " must be of " +
+                    "type PrivateKey, String or byte[] and not " +
+                    privateKeyObject.getClass().getName());
+        }
+
+        return privateKey;
+    }
+
+    /**
+     * Load a public key from key file or certificate. It can load from
+     * different sources depending on the type of the input,
+     * <ul>
+     * <li>A PublicKey object
+     * <li>A X509Certificate object
+     * <li>A string buffer for PEM
+     * <li>A byte array with X509 encoded key or certificate
+     * </ul>
+     * 
+     * @param publicKeyObject The object for public key or certificate
+     * @param isCert True if this object is provided as Certificate
+     * @return The public key
+     * @throws IOException
+     * @throws GeneralSecurityException
+     */
+    private PublicKey loadPublicKey(Object publicKeyObject, boolean isCert) 
+    throws IOException, GeneralSecurityException {
+
+        PublicKey publicKey;
+
+        if (publicKeyObject instanceof PublicKey) {
+            publicKey = (PublicKey)publicKeyObject;
+        } else if (publicKeyObject instanceof X509Certificate) {
+            publicKey = ((X509Certificate) publicKeyObject).getPublicKey();
+        } else if (publicKeyObject instanceof String) {
+            try {
+                publicKey = getPublicKeyFromPem((String)publicKeyObject);
+            } catch (IOException e) {
+                // Check if it's marker-stripped PEM for public key
+                if (isCert) 
+                    throw e;
+                publicKey = getPublicKeyFromDer(
+                        decodeBase64((String)publicKeyObject));
+            }
+        } else if (publicKeyObject instanceof byte[]) { 
+            if (isCert)
+                publicKey = getPublicKeyFromDerCert((byte[])publicKeyObject);
+            else
+                publicKey = getPublicKeyFromDer((byte[])publicKeyObject);
+        } else {
+            String source;
+            if (isCert)
+                source = certificateProperty;
+            else
+                source = publicKeyProperty;
+            throw new IllegalArgumentException(
+                    "Public key or certificate set through " + source + " must be of " +
+                    "type PublicKey, String or byte[], and not " +
+                    publicKeyObject.getClass().getName());
+        }
+
+        return publicKey;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.List;
+
+import javax.crypto.Mac;
+
+import net.oauth.ByteSink;
+import net.oauth.EncodedParameter;
+
+/**
+ * The <a href="http://oauth.net/core/1.0a#anchor13">signature base string</a>
+ * of a message, in a form that can be written as bytes without constructing
+ * the String. The HTTP method and normalized URL are encoded when this is
+ * constructed; the normalized parameters are percent encoded a second time
+ * while they're written.
+ * <p>
+ * The String is constructed (and then remembered) only if toString is
+ * called; for example to report a problem.
+ */
+public class SignatureBaseString {
+
+    /**
+     * @param prefix
+     *            the percent encoded HTTP method and normalized URL, each
+     *            followed by '&amp;'
+     * @param parameters
+     *            the normalized parameters, already sorted
+     */
+    SignatureBaseString(byte[] prefix, List<EncodedParameter> parameters) {
+        this.prefix = prefix;
+        this.parameters = parameters;
+    }
+
+    private final byte[] prefix;
+
+    private final List<EncodedParameter> parameters;
+
+    private String string;
+
+    /** The number of bytes (or characters) in this base string. */
+    public int length() {
+        int length = prefix.length;
+        boolean first = true;
+        for (EncodedParameter parameter : parameters) {
+            if (first) {
+                first = false;
+            } else {
+                length += AMPERSAND.length;
+            }
+            length += encodedLength(parameter.getEncodedKey()) + EQUALS.length
+                    + encodedLength(parameter.getEncodedValue());
+        }
+        return length;
+    }
+
+    /** Write this base string, as ASCII. */
+    public void writeTo(ByteSink into) throws IOException {
+        into.write(prefix);
+        boolean first = true;
+        for (EncodedParameter parameter : parameters) {
+            if (first) {
+                first = false;
+            } else {
+                into.write(AMPERSAND);
+            }
+            writeEncoded(parameter.getEncodedKey(), into);
+            into.write(EQUALS);
+            writeEncoded(parameter.getEncodedValue(), into);
+        }
+    }
+
+    /** Feed this base string into the given Mac. */
+    public void update(final Mac mac) {
+        try {
+            ByteSink sink = new ByteSink(BUFFER_SIZE) {
+                @Override
+                public void drain() {
+                    buffer.flip();
+                    mac.update(buffer);
+                    clear();
+                }
+
+                @Override
+                protected void overflow(int needed) {
+                    drain();
+                }
+            };
+            writeTo(sink);
+            sink.drain();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // impossible
+        }
+    }
+
+    /** Feed this base string into the given Signature. */
+    public void update(final Signature signature) throws SignatureException {
+        try {
+            ByteSink sink = new ByteSink(BUFFER_SIZE) {
+                @Override
+                public void drain() throws IOException {
+                    buffer.flip();
+                    try {
+                        signature.update(buffer);
+                    } catch (SignatureException e) {
+                        throw (IOException) new IOException(e.getMessage()).initCause(e);
+                    }
+                    clear();
+                }
+
+                @Override
+                protected void overflow(int needed) throws IOException {
+                    drain();
+                }
+            };
+            writeTo(sink);
+            sink.drain();
+        } catch (IOException e) {
+            if (e.getCause() instanceof SignatureException) {
+                throw (SignatureException) e.getCause();
+            }
+            throw new IllegalStateException(e); // impossible
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            ByteSink sink = new ByteSink(ByteBuffer.allocate(length()));
+            try {
+                writeTo(sink);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // impossible
+            }
+            string = sink.toString();
+        }
+        return string;
+    }
+
+    /**
+     * Write the percent encoding of an already encoded string. Only '%' needs
+     * to be encoded again; the other characters are unreserved.
+     */
+    private static void writeEncoded(byte[] from, ByteSink into)
+            throws IOException {
+        int start = 0;
+        for (int i = 0; i < from.length; ++i) {
+            if (from[i] == '%') {
+                into.write(from, start, i - start);
+                into.write(PERCENT);
+                start = i + 1;
+            }
+        }
+        into.write(from, start, from.length - start);
+    }
+
+    private static int encodedLength(byte[] from) {
+        int length = from.length;
+        for (int i = 0; i < from.length; ++i) {
+            if (from[i] == '%') {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private static final int BUFFER_SIZE = 256;
+
+    private static final byte[] PERCENT = { '%', '2', '5' };
+
+    private static final byte[] AMPERSAND = { '%', '2', '6' };
+
+    private static final byte[] EQUALS = { '%', '3', 'D' };
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.oauth.EncodedParameter;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+
+/**
+ * Signs many requests to the same URL, from the same accessor. The work that
+ * doesn't vary from one request to the next is done once, when the template
+ * is constructed: normalizing the URL, encoding and sorting the parameters
+ * that are the same in every request, and initializing the signature method.
+ * Each call to sign merely adds the parameters that vary (including
+ * oauth_nonce and oauth_timestamp, unless the caller supplies them).
+ * <p>
+ * A template is safe for concurrent use, provided the accessor isn't
+ * modified after the template is constructed.
+ */
+public class SigningTemplate {
+
+    /**
+     * @param httpMethod
+     *            the HTTP request method, for example OAuthMessage.GET
+     * @param url
+     *            the request URL, which may contain a query string
+     * @param parameters
+     *            parameters that are the same in every request. The
+     *            oauth_consumer_key, oauth_token, oauth_signature_method and
+     *            oauth_version are added, if they're not given here.
+     * @throws IllegalArgumentException
+     *             the parameters or the URL's query string contain
+     *             oauth_nonce, oauth_timestamp or oauth_signature, which vary
+     *             from one request to the next
+     */
+    public SigningTemplate(OAuthAccessor accessor, String httpMethod,
+            String url, Collection<? extends Map.Entry> parameters)
+            throws OAuthException, IOException, URISyntaxException {
+        this.httpMethod = httpMethod;
+        this.url = url;
+        OAuthMessage message = new OAuthMessage(httpMethod, url, parameters);
+        addRequiredParameters(message, accessor);
+        fixedParameters = message.getParameters();
+        signer = OAuthSignatureMethod.getSigner(message, accessor);
+        List<Map.Entry> normal = new ArrayList<Map.Entry>(fixedParameters);
+        String path = url;
+        int q = url.indexOf('?');
+        if (q >= 0) {
+            normal.addAll(OAuth.decodeForm(CharBuffer.wrap(url, q + 1, url.length())));
+            path = url.substring(0, q);
+        }
+        for (Map.Entry parameter : normal) {
+            if (VARYING_PARAMETERS.contains(parameter.getKey())) {
+                throw new IllegalArgumentException(parameter.getKey()
+                        + " varies, so it can't be a template parameter");
+            }
+        }
+        prefix = OAuthSignatureMethod.getPrefix(httpMethod, path);
+        sortedParameters = ParameterNormalizer.sort(normal);
+        fixedHeader = appendHeader(fixedParameters, new StringBuilder(), 0).toString();
+        fixedQuery = OAuth.formEncode(fixedParameters);
+    }
+
+    /** Parameters that sign adds to each request, which mustn't be fixed. */
+    private static final Set<String> VARYING_PARAMETERS = new HashSet<String>(Arrays.asList(
+            OAuth.OAUTH_NONCE, OAuth.OAUTH_TIMESTAMP, OAuth.OAUTH_SIGNATURE));
+
+    private final String httpMethod;
+
+    private final String url;
+
+    private final OAuthSignatureMethod signer;
+
+    /** The parameters given to the constructor, plus required parameters. */
+    private final List<Map.Entry<String, String>> fixedParameters;
+
+    /** The fixed parameters plus the URL query, in normalized order. */
+    private final List<EncodedParameter> sortedParameters;
+
+    private final byte[] prefix;
+
+    /** The fixed oauth_ parameters, formatted for an Authorization header. */
+    private final String fixedHeader;
+
+    /** The fixed parameters, form-encoded. */
+    private final String fixedQuery;
+
+    public String getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getURL() {
+        return url;
+    }
+
+    /**
+     * Sign a request, with a new nonce and timestamp.
+     *
+     * @param parameters
+     *            parameters that vary from one request to the next, other
+     *            than oauth_nonce and oauth_timestamp. This may be null.
+     */
+    public Signed sign(Collection<? extends Map.Entry> parameters)
+            throws OAuthException {
+        List<EncodedParameter> varying = new ArrayList<EncodedParameter>(
+                (parameters == null) ? 2 : parameters.size() + 2);
+        boolean hasNonce = false;
+        boolean hasTimestamp = false;
+        if (parameters != null) {
+            for (Map.Entry parameter : parameters) {
+                EncodedParameter p = EncodedParameter.of(parameter);
+                varying.add(p);
+                if (OAuth.OAUTH_NONCE.equals(p.getKey())) {
+                    hasNonce = true;
+                } else if (OAuth.OAUTH_TIMESTAMP.equals(p.getKey())) {
+                    hasTimestamp = true;
+                }
+            }
+        }
+        if (!hasTimestamp) {
+            varying.add(new EncodedParameter(OAuth.OAUTH_TIMESTAMP,
+                    (System.currentTimeMillis() / 1000) + ""));
+        }
+        if (!hasNonce) {
+            varying.add(new EncodedParameter(OAuth.OAUTH_NONCE, System.nanoTime() + ""));
+        }
+        List<EncodedParameter> normal = ParameterNormalizer.merge(sortedParameters,
+                ParameterNormalizer.sort(varying));
+        String signature = signer.getSignature(new SignatureBaseString(prefix, normal));
+        varying.add(new EncodedParameter(OAuth.OAUTH_SIGNATURE, signature));
+        return new Signed(varying);
+    }
+
+    /** A request signed by this template. */
+    public class Signed {
+
+        Signed(List<EncodedParameter> varying) {
+            this.varying = varying;
+        }
+
+        /** The varying parameters, followed by oauth_signature. */
+        private final List<EncodedParameter> varying;
+
+        public String getSignature() {
+            return varying.get(varying.size() - 1).getValue();
+        }
+
+        /**
+         * All the parameters of the request, including oauth_signature but
+         * not including the template URL's query string.
+         */
+        public List<Map.Entry<String, String>> getParameters() {
+            List<Map.Entry<String, String>> all = new ArrayList<Map.Entry<String, String>>(
+                    fixedParameters.size() + varying.size());
+            all.addAll(fixedParameters);
+            all.addAll(varying);
+            return Collections.unmodifiableList(all);
+        }
+
+        /**
+         * Construct an Authorization header value, containing the given realm
+         * plus all the parameters whose names begin with "oauth_"; the same
+         * as OAuthMessage.getAuthorizationHeader.
+         */
+        public String getAuthorizationHeader(String realm) {
+            StringBuilder into = new StringBuilder(OAuthMessage.AUTH_SCHEME);
+            if (realm != null) {
+                OAuth.percentEncode(realm, into.append(" realm=\"")).append('"');
+                if (fixedHeader.length() > 0) {
+                    into.append(',');
+                }
+            }
+            into.append(fixedHeader);
+            return appendHeader(varying, into, OAuthMessage.AUTH_SCHEME.length()).toString();
+        }
+
+        /** Form-encode all the parameters, for a query string or request body. */
+        public String getQueryString() {
+            StringBuilder into = new StringBuilder(fixedQuery);
+            for (EncodedParameter parameter : varying) {
+                if (into.length() > 0) {
+                    into.append('&');
+                }
+                parameter.appendTo(into);
+            }
+            return into.toString();
+        }
+
+        /** The template URL, with all the parameters added to its query string. */
+        public String getURL() {
+            return url + ((url.indexOf('?') < 0) ? '?' : '&') + getQueryString();
+        }
+
+        /** Construct a message that contains all the parameters. */
+        public OAuthMessage toMessage() {
+            return new OAuthMessage(httpMethod, url, getParameters());
+        }
+
+    }
+
+    /** Add the same parameters as OAuthMessage.addRequiredParameters, except the nonce and timestamp. */
+    private static void addRequiredParameters(OAuthMessage message,
+            OAuthAccessor accessor) throws IOException {
+        final OAuthConsumer consumer = accessor.consumer;
+        if (message.getToken() == null && accessor.accessToken != null) {
+            message.addParameter(OAuth.OAUTH_TOKEN, accessor.accessToken);
+        }
+        if (message.getConsumerKey() == null) {
+            message.addParameter(OAuth.OAUTH_CONSUMER_KEY, consumer.consumerKey);
+        }
+        if (message.getSignatureMethod() == null) {
+            String signatureMethod = (String) consumer.getProperty(OAuth.OAUTH_SIGNATURE_METHOD);
+            if (signatureMethod == null) {
+                signatureMethod = OAuth.HMAC_SHA1;
+            }
+            message.addParameter(OAuth.OAUTH_SIGNATURE_METHOD, signatureMethod);
+        }
+        if (message.getParameter(OAuth.OAUTH_VERSION) == null) {
+            message.addParameter(OAuth.OAUTH_VERSION, OAuth.VERSION_1_0);
+        }
+    }
+
+    /**
+     * Append the oauth_ parameters in the format of an Authorization header,
+     * separated by commas from anything that follows start.
+     */
+    private static StringBuilder appendHeader(
+            Collection<? extends Map.Entry<String, String>> parameters,
+            StringBuilder into, int start) {
+        for (Map.Entry<String, String> parameter : parameters) {
+            String name = parameter.getKey();
+            if (name != null && name.startsWith("oauth_")) {
+                if (into.length() > start) {
+                    into.append(',');
+                }
+                EncodedParameter p = EncodedParameter.of(parameter);
+                p.appendEncodedKey(into.append(' ')).append("=\"");
+                p.appendEncodedValue(into).append('"');
+            }
+        }
+        return into;
+    }
+
+}
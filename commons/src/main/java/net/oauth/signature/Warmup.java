@@ -0,0 +1,353 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.crypto.Mac;
+
+import net.oauth.ConsumerProperties;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+
+/**
+ * Does the slow work that's otherwise done by the first requests after a
+ * service starts: finding the JCA providers, loading the signature method
+ * classes and parsing consumers' keys. Each step is timed, and the steps that
+ * failed are reported instead of thrown, so a service can log the report and
+ * decide whether to start taking requests. For example:
+ *
+ * <pre>
+ * Warmup warmup = Warmup.run(consumers, executor);
+ * log.info(warmup.toString());
+ * </pre>
+ *
+ * A Warmup may be used by several threads concurrently.
+ */
+public class Warmup {
+
+    /**
+     * Warm up the JCA providers and all the registered signature methods, and
+     * load the given consumers.
+     *
+     * @param consumers
+     *            the consumers to load, or null
+     * @param executor
+     *            runs the steps in parallel, or null to run them in the calling
+     *            thread. A step that the executor rejects is run in the
+     *            calling thread.
+     */
+    public static Warmup run(ConsumerProperties consumers, Executor executor)
+            throws InterruptedException {
+        Warmup warmup = new Warmup(executor);
+        warmup.warmUpProviders();
+        warmup.warmUpMethods();
+        if (consumers != null) {
+            warmup.warmUpConsumers(consumers);
+        }
+        return warmup;
+    }
+
+    /**
+     * @param executor
+     *            runs the steps in parallel, or null to run them in the calling
+     *            thread
+     */
+    public Warmup(Executor executor) {
+        this.executor = executor;
+    }
+
+    private final Executor executor;
+
+    private final List<Step> steps = Collections.synchronizedList(new ArrayList<Step>());
+
+    /** The steps that have been done so far, in the order they finished. */
+    public List<Step> getSteps() {
+        synchronized (steps) {
+            return new ArrayList<Step>(steps);
+        }
+    }
+
+    /** The steps that failed. */
+    public List<Step> getFailures() {
+        List<Step> failures = new ArrayList<Step>();
+        for (Step step : getSteps()) {
+            if (step.getException() != null) {
+                failures.add(step);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Get the JCA engines used by the standard signature methods, which makes
+     * the Java runtime find and load their providers.
+     */
+    public void warmUpProviders() throws InterruptedException {
+        List<Task> tasks = new ArrayList<Task>();
+        tasks.add(new Task("Mac HmacSHA1") {
+            protected void run() throws Exception {
+                Mac.getInstance("HmacSHA1");
+            }
+        });
+        tasks.add(new Task("MessageDigest SHA-1") {
+            protected void run() throws Exception {
+                MessageDigest.getInstance("SHA-1");
+            }
+        });
+        tasks.add(new Task("CertificateFactory X.509") {
+            protected void run() throws Exception {
+                CertificateFactory.getInstance("X.509");
+            }
+        });
+        Set<String> keyAlgorithms = new TreeSet<String>();
+        for (String name : OAuthSignatureMethod.getMethodNames()) {
+            try {
+                OAuthSignatureMethod method = OAuthSignatureMethod.newMethod(name,
+                        new OAuthAccessor(new OAuthConsumer(null, null, null, null)));
+                if (method instanceof PublicKeySignatureMethod) {
+                    keyAlgorithms.add(((PublicKeySignatureMethod) method).getKeyAlgorithm());
+                }
+            } catch (Exception ignored) {
+                // warmUpMethods will report it.
+            }
+        }
+        for (final String algorithm : keyAlgorithms) {
+            tasks.add(new Task("KeyFactory " + algorithm) {
+                protected void run() throws Exception {
+                    KeyFactory.getInstance(algorithm);
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    /**
+     * Construct each registered signature method, and use it to sign and
+     * verify a synthetic message. A method that uses public keys is given a
+     * newly generated key pair, so this may take a while. Each signature
+     * method factory that failed to load (see
+     * OAuthSignatureMethod.getLoadFailures) is reported as a failed step.
+     */
+    public void warmUpMethods() throws InterruptedException {
+        for (Exception failure : OAuthSignatureMethod.getLoadFailures()) {
+            steps.add(new Step("load signature methods", 0, failure));
+        }
+        List<Task> tasks = new ArrayList<Task>();
+        for (final String name : OAuthSignatureMethod.getMethodNames()) {
+            tasks.add(new Task("method " + name) {
+                protected void run() throws Exception {
+                    signAndVerify(name);
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    /**
+     * Construct all the consumers described by the given properties, and
+     * initialize the signature method that each one uses, which parses its
+     * keys and caches them in the consumer (see warmUpAccessors).
+     */
+    public void warmUpConsumers(final ConsumerProperties consumers)
+            throws InterruptedException {
+        List<Task> tasks = new ArrayList<Task>();
+        for (final String name : consumers.getConsumerNames()) {
+            tasks.add(new Task("consumer " + name) {
+                protected void run() throws Exception {
+                    warmUp(new OAuthAccessor(consumers.getConsumer(name)));
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    /**
+     * Cache in each of the given accessors the signature method that its
+     * consumer uses, as OAuthSignatureMethod.getSigner does; which parses
+     * the consumer's keys. A consumer uses the method named by its
+     * oauth_signature_method property, or HMAC-SHA1 by default.
+     * <p>
+     * This is useful for a service that keeps an accessor for each consumer
+     * or token, and uses them to sign or validate messages.
+     */
+    public void warmUpAccessors(Collection<OAuthAccessor> accessors)
+            throws InterruptedException {
+        List<Task> tasks = new ArrayList<Task>();
+        for (final OAuthAccessor accessor : accessors) {
+            Object name = accessor.consumer.getProperty("name");
+            if (name == null) {
+                name = accessor.consumer.consumerKey;
+            }
+            tasks.add(new Task("consumer " + name) {
+                protected void run() throws Exception {
+                    warmUp(accessor);
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    private static void warmUp(OAuthAccessor accessor) throws Exception {
+        String method = (String) accessor.consumer.getProperty(OAuth.OAUTH_SIGNATURE_METHOD);
+        OAuthMessage message = new OAuthMessage(null, null, OAuth.newList(
+                OAuth.OAUTH_SIGNATURE_METHOD, (method == null) ? OAuth.HMAC_SHA1 : method));
+        OAuthSignatureMethod.getSigner(message, accessor);
+    }
+
+    private static void signAndVerify(String name) throws Exception {
+        final String baseString = "GET&http%3A%2F%2Fexample.com%2F&oauth_nonce%3Dwarmup";
+        OAuthConsumer consumer = new OAuthConsumer(null, "warmup", "warmup", null);
+        OAuthAccessor accessor = new OAuthAccessor(consumer);
+        accessor.tokenSecret = "warmup";
+        OAuthSignatureMethod method = OAuthSignatureMethod.newMethod(name, accessor);
+        if (method instanceof PublicKeySignatureMethod) {
+            PublicKeySignatureMethod keyed = (PublicKeySignatureMethod) method;
+            KeyPair keys = KeyPairGenerator.getInstance(keyed.getKeyAlgorithm())
+                    .generateKeyPair();
+            // Encoded keys, so they're parsed the way consumers' keys are:
+            consumer.setProperty(keyed.getPrivateKeyProperty(), keys.getPrivate().getEncoded());
+            consumer.setProperty(keyed.getPublicKeyProperty(), keys.getPublic().getEncoded());
+            method = OAuthSignatureMethod.newMethod(name, accessor);
+        }
+        String signature = method.getSignature(baseString);
+        if (!method.isValid(signature, baseString)) {
+            throw new OAuthException(name + " didn't verify its own signature");
+        }
+    }
+
+    private void runAll(List<Task> tasks) throws InterruptedException {
+        final CountDownLatch remaining = new CountDownLatch(tasks.size());
+        for (final Task task : tasks) {
+            Runnable runnable = new Runnable() {
+                public void run() {
+                    try {
+                        steps.add(task.call());
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            };
+            if (executor == null) {
+                runnable.run();
+            } else {
+                try {
+                    executor.execute(runnable);
+                } catch (RejectedExecutionException e) {
+                    // The executor is saturated or shut down.
+                    runnable.run();
+                }
+            }
+        }
+        remaining.await();
+    }
+
+    /** A multi-line description of the steps, for a log. */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("Warmup");
+        List<Step> done = getSteps();
+        long total = 0;
+        int failed = 0;
+        for (Step step : done) {
+            total += step.getElapsedNanos();
+            if (step.getException() != null) {
+                ++failed;
+            }
+        }
+        s.append(": ").append(done.size()).append(" steps, ").append(failed)
+                .append(" failed, ").append(total / 1000000L).append(" msec total");
+        for (Step step : done) {
+            s.append("\n  ").append(step);
+        }
+        return s.toString();
+    }
+
+    /** The result of one step of a Warmup. */
+    public static class Step {
+
+        Step(String name, long elapsedNanos, Exception exception) {
+            this.name = name;
+            this.elapsedNanos = elapsedNanos;
+            this.exception = exception;
+        }
+
+        private final String name;
+
+        private final long elapsedNanos;
+
+        private final Exception exception;
+
+        /** What was done; for example "method RSA-SHA1" or "consumer [name]". */
+        public String getName() {
+            return name;
+        }
+
+        /** How long it took. */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** Why it failed, or null if it succeeded. */
+        public Exception getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + (elapsedNanos / 1000L) + " usec"
+                    + ((exception == null) ? "" : " FAILED " + exception);
+        }
+    }
+
+    private static abstract class Task {
+
+        Task(String name) {
+            this.name = name;
+        }
+
+        private final String name;
+
+        protected abstract void run() throws Exception;
+
+        Step call() {
+            final long start = System.nanoTime();
+            Exception failure = null;
+            try {
+                run();
+            } catch (Exception e) {
+                failure = e;
+            }
+            return new Step(name, System.nanoTime() - start, failure);
+        }
+    }
+
+}
@@ -30,6 +30,9 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+
+import net.oauth.CharsetCodec;
 import net.oauth.signature.OAuthSignatureMethod;
 
 /**
@@ -70,6 +73,11 @@ public class PEMReader {
         this(new FileInputStream(fileName));
     }
 
+    /** Read PEM that has already been decoded into characters. */
+    public PEMReader(Reader reader) throws IOException {
+        readFile(new BufferedReader(reader));
+    }
+
     public byte[] getDerBytes() {
         return derBytes;
     }
@@ -85,10 +93,13 @@ public class PEMReader {
      * @throws IOException
      */
     protected void readFile() throws IOException {
+        // PEM is ASCII; ISO-8859-1 decodes any other bytes unambiguously.
+        readFile(new BufferedReader(new InputStreamReader(stream,
+                CharsetCodec.ISO_8859_1)));
+    }
 
+    private void readFile(BufferedReader reader) throws IOException {
         String  line;
-        BufferedReader reader = new BufferedReader(
-                new InputStreamReader(stream));
         try {
             while ((line = reader.readLine()) != null)
             {
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.client;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+import net.oauth.signature.OAuthSignatureMethod;
+
+/**
+ * Signs many messages from one accessor in parallel; for example to prepare
+ * a batch of requests for export. The messages are signed by the threads of
+ * an Executor, which share the signature method object that
+ * OAuthSignatureMethod.getSigner caches in the accessor; and the signed
+ * messages are passed to a Receiver in the same order they were given. At
+ * most maxInFlight messages are signed ahead of the Receiver, which bounds
+ * the memory used by a long stream of messages.
+ * <p>
+ * Each message is signed as by OAuthMessage.sign, so it should already
+ * contain the other required parameters (oauth_consumer_key, oauth_nonce
+ * etc.) but not oauth_signature.
+ * <p>
+ * A BulkSigner may be used by several threads concurrently.
+ */
+public class BulkSigner {
+
+    /**
+     * @param executor
+     *            the threads that sign messages, or null to sign them in the
+     *            thread that calls sign
+     * @param maxInFlight
+     *            the maximum number of messages that are submitted to the
+     *            executor but not yet passed to the Receiver
+     */
+    public BulkSigner(OAuthAccessor accessor, Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight " + maxInFlight);
+        }
+        this.accessor = accessor;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    private final OAuthAccessor accessor;
+
+    private final Executor executor;
+
+    private final int maxInFlight;
+
+    /** Receives signed messages, in order. */
+    public static interface Receiver {
+
+        void receive(OAuthMessage signed) throws IOException;
+
+    }
+
+    /**
+     * Sign the given messages, and pass each one to the receiver after it's
+     * signed, in the same order. If signing a message fails, the messages
+     * that follow it aren't passed to the receiver; they may or may not be
+     * signed.
+     *
+     * @throws InterruptedException
+     *             this thread was interrupted while waiting for a signature
+     */
+    public void sign(Iterator<? extends OAuthMessage> messages, Receiver receiver)
+            throws OAuthException, IOException, URISyntaxException,
+            InterruptedException {
+        final Queue<FutureTask<OAuthMessage>> inFlight = new LinkedList<FutureTask<OAuthMessage>>();
+        try {
+            while (messages.hasNext()) {
+                if (inFlight.size() >= maxInFlight) {
+                    receiver.receive(getResult(inFlight.remove()));
+                }
+                FutureTask<OAuthMessage> task = newTask(messages.next());
+                inFlight.add(task);
+                if (executor == null) {
+                    task.run();
+                } else {
+                    executor.execute(task);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                receiver.receive(getResult(inFlight.remove()));
+            }
+        } finally {
+            for (FutureTask<OAuthMessage> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    private FutureTask<OAuthMessage> newTask(final OAuthMessage message) {
+        return new FutureTask<OAuthMessage>(new Callable<OAuthMessage>() {
+            public OAuthMessage call() throws Exception {
+                OAuthSignatureMethod.getSigner(message, accessor).sign(message);
+                return message;
+            }
+        });
+    }
+
+    private static OAuthMessage getResult(FutureTask<OAuthMessage> task)
+            throws OAuthException, IOException, URISyntaxException,
+            InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof OAuthException)
+                throw (OAuthException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof URISyntaxException)
+                throw (URISyntaxException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new OAuthException(cause);
+        }
+    }
+
+}
@@ -71,6 +71,7 @@ public class OAuthClient {
 
     private HttpClient http;
     protected final Map<String, Object> httpParameters = new HashMap<String, Object>();
+    private long maxResponseFormLength = OAuthResponseMessage.DEFAULT_MAX_FORM_LENGTH;
 
     public void setHttpClient(HttpClient http) {
         this.http = http;
@@ -80,6 +81,23 @@ public class OAuthClient {
         return http;
     }
 
+    /**
+     * The maximum length of a response body from which parameters are
+     * decoded, in bytes.
+     */
+    public long getMaxResponseFormLength() {
+        return maxResponseFormLength;
+    }
+
+    /**
+     * Limit the length of response bodies from which parameters will be
+     * decoded. A response that exceeds the limit isn't read any further, so
+     * a misbehaving service provider can't consume unbounded memory.
+     */
+    public void setMaxResponseFormLength(long maxResponseFormLength) {
+        this.maxResponseFormLength = maxResponseFormLength;
+    }
+
     /**
      * HTTP client parameters, as a map from parameter name to value.
      * 
@@ -324,7 +342,7 @@ public class OAuthClient {
         HttpMessage httpRequest = HttpMessage.newRequest(request, style);
         HttpResponseMessage httpResponse = http.execute(httpRequest, httpParameters);
         httpResponse = HttpMessageDecoder.decode(httpResponse);
-        return new OAuthResponseMessage(httpResponse);
+        return new OAuthResponseMessage(httpResponse, maxResponseFormLength);
     }
 
     protected static final String PUT = OAuthMessage.PUT;
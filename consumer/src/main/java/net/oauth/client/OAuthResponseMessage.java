@@ -31,10 +31,11 @@ import net.oauth.http.HttpResponseMessage;
  */
 public class OAuthResponseMessage extends OAuthMessage
 {
-    OAuthResponseMessage(HttpResponseMessage http) throws IOException
+    OAuthResponseMessage(HttpResponseMessage http, long maxFormLength) throws IOException
     {
         super(http.method, http.url.toExternalForm(), null);
         this.http = http;
+        this.maxFormLength = maxFormLength;
         getHeaders().addAll(http.headers);
         for (Map.Entry<String, String> header : http.headers) {
             if ("WWW-Authenticate".equalsIgnoreCase(header.getKey())) {
@@ -48,11 +49,32 @@ public class OAuthResponseMessage extends OAuthMessage
     }
 
     private final HttpResponseMessage http;
+    private long maxFormLength;
+
+    /**
+     * The default maximum length of a response body from which parameters
+     * are decoded, in bytes.
+     */
+    public static final long DEFAULT_MAX_FORM_LENGTH = 1024 * 1024;
 
     public HttpResponseMessage getHttpResponse() {
         return http;
     }
 
+    /** The maximum length of a body from which parameters are decoded, in bytes. */
+    public long getMaxFormLength() {
+        return maxFormLength;
+    }
+
+    /**
+     * Limit the length of a body from which parameters will be decoded. When
+     * the limit is exceeded, getParameters throws an OAuth.FormTooLongException
+     * and requireParameters throws its OAuthProblemException.
+     */
+    public void setMaxFormLength(long maxFormLength) {
+        this.maxFormLength = maxFormLength;
+    }
+
     @Override
     public InputStream getBodyAsStream() throws IOException
     {
@@ -69,6 +91,8 @@ public class OAuthResponseMessage extends OAuthMessage
     public void requireParameters(String... names) throws OAuthProblemException, IOException {
         try {
             super.requireParameters(names);
+        } catch (OAuth.FormTooLongException e) {
+            throw e.getProblem();
         } catch (OAuthProblemException problem) {
             problem.getParameters().putAll(getDump());
             throw problem;
@@ -101,9 +125,13 @@ public class OAuthResponseMessage extends OAuthMessage
     protected void completeParameters() throws IOException
     {
         super.completeParameters();
-        String body = readBodyAsString();
+        InputStream body = getBodyAsStream();
         if (body != null) {
-            addParameters(OAuth.decodeForm(body.trim()));
+            try {
+                addParameters(OAuth.decodeForm(body, getBodyEncoding(), maxFormLength));
+            } finally {
+                body.close();
+            }
         }
     }
 
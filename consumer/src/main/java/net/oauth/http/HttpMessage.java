@@ -16,7 +16,6 @@
 
 package net.oauth.http;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -27,6 +26,7 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.oauth.client.ExcerptInputStream;
+import net.oauth.ByteSink;
 import net.oauth.OAuth;
 import net.oauth.OAuthMessage;
 import net.oauth.OAuthProblemException;
@@ -140,13 +140,9 @@ public class HttpMessage
         case QUERY_STRING:
             url = OAuth.addParameters(url, from.getParameters());
             break;
-        case BODY: {
-            byte[] form = OAuth.formEncode(from.getParameters()).getBytes(from.getBodyEncoding());
-            headers.add(new OAuth.Parameter(CONTENT_TYPE, OAuth.FORM_ENCODED));
-            headers.add(new OAuth.Parameter(CONTENT_LENGTH, form.length + ""));
-            body = new ByteArrayInputStream(form);
+        case BODY:
+            body = newFormBody(from.getParameters(), headers);
             break;
-        }
         case AUTHORIZATION_HEADER:
             headers.add(new OAuth.Parameter("Authorization", from.getAuthorizationHeader(null)));
             // Find the non-OAuth parameters:
@@ -160,10 +156,7 @@ public class HttpMessage
                 }
                 // Place the non-OAuth parameters elsewhere in the request:
                 if (isPost && body == null) {
-                    byte[] form = OAuth.formEncode(others).getBytes(from.getBodyEncoding());
-                    headers.add(new OAuth.Parameter(CONTENT_TYPE, OAuth.FORM_ENCODED));
-                    headers.add(new OAuth.Parameter(CONTENT_LENGTH, form.length + ""));
-                    body = new ByteArrayInputStream(form);
+                    body = newFormBody(others, headers);
                 } else {
                     url = OAuth.addParameters(url, others);
                 }
@@ -175,6 +168,21 @@ public class HttpMessage
         return httpRequest;
     }
 
+    /**
+     * Construct a form-encoded request body containing the given parameters,
+     * and add the corresponding headers. The parameters are percent-encoded
+     * directly into bytes (which are pure ASCII, so the body encoding doesn't
+     * matter).
+     */
+    private static InputStream newFormBody(Iterable<? extends Map.Entry> parameters,
+            List<Map.Entry<String, String>> headers) throws IOException {
+        ByteSink form = new ByteSink();
+        form.writeFormEncoded(parameters);
+        headers.add(new OAuth.Parameter(CONTENT_TYPE, OAuth.FORM_ENCODED));
+        headers.add(new OAuth.Parameter(CONTENT_LENGTH, form.size() + ""));
+        return form.toInputStream();
+    }
+
     private static boolean equalsIgnoreCase(String x, String y)
     {
         if (x == null)
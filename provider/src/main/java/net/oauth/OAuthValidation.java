@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+/**
+ * A message to be validated as part of a batch, and the result of validating
+ * it. See SimpleOAuthValidator.validateMessages.
+ */
+public class OAuthValidation {
+
+    public OAuthValidation(OAuthMessage message, OAuthAccessor accessor) {
+        this.message = message;
+        this.accessor = accessor;
+    }
+
+    private final OAuthMessage message;
+
+    private final OAuthAccessor accessor;
+
+    private volatile boolean done = false;
+
+    private volatile Exception exception = null;
+
+    public OAuthMessage getMessage() {
+        return message;
+    }
+
+    public OAuthAccessor getAccessor() {
+        return accessor;
+    }
+
+    /** Whether the message was validated and found valid. */
+    public boolean isValid() {
+        return done && exception == null;
+    }
+
+    /** Whether validation is finished, successfully or not. */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Why the message is invalid; or null if it's valid or hasn't been
+     * validated. Typically this is an OAuthProblemException, but it may be an
+     * IOException (the message couldn't be read) or URISyntaxException (the
+     * message URL is invalid), for example.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /** Record that the message is invalid. */
+    public void setException(Exception exception) {
+        this.exception = exception;
+        done = true;
+    }
+
+    /** Record that validation is finished, unless it already failed. */
+    public void setDone() {
+        done = true;
+    }
+
+    @Override
+    public String toString() {
+        return (done ? ((exception == null) ? "valid " : exception + " ")
+                : "unvalidated ") + message;
+    }
+
+}
@@ -24,9 +24,14 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import net.oauth.signature.LRUCache;
 import net.oauth.signature.OAuthSignatureMethod;
 
 //TODO: move this class into oauth-provider
@@ -69,7 +74,7 @@ public class SimpleOAuthValidator implements OAuthValidator {
         Set<String> s = new HashSet<String>();
         for (String p : new String[] { OAuth.OAUTH_CONSUMER_KEY, OAuth.OAUTH_TOKEN, OAuth.OAUTH_TOKEN_SECRET,
                 OAuth.OAUTH_CALLBACK, OAuth.OAUTH_SIGNATURE_METHOD, OAuth.OAUTH_SIGNATURE, OAuth.OAUTH_TIMESTAMP,
-                OAuth.OAUTH_NONCE, OAuth.OAUTH_VERSION }) {
+                OAuth.OAUTH_NONCE, OAuth.OAUTH_VERSION, OAuth.OAUTH_BODY_HASH }) {
             s.add(p);
         }
         return Collections.unmodifiableSet(s);
@@ -144,10 +149,165 @@ public class SimpleOAuthValidator implements OAuthValidator {
     throws OAuthException, IOException, URISyntaxException {
         checkSingleParameters(message);
         validateVersion(message);
+        validateBodyHash(message);
         validateTimestampAndNonce(message);
         validateSignature(message, accessor);
     }
 
+    /**
+     * Validate a message whose signature may have been made with any of
+     * several keys; for example while a consumer's secret or RSA key is being
+     * replaced. The checks are the same as validateMessage, except that the
+     * signature is checked by each of the candidates in turn (see
+     * validateSignature). The signature base string is constructed only once.
+     * 
+     * @param candidates
+     *            accessors for the same consumer key, with different secrets
+     *            or keys
+     * @return the candidate that verified the signature
+     */
+    public OAuthAccessor validateMessage(OAuthMessage message,
+            List<? extends OAuthAccessor> candidates)
+    throws OAuthException, IOException, URISyntaxException {
+        checkSingleParameters(message);
+        validateVersion(message);
+        validateBodyHash(message);
+        validateTimestampAndNonce(message);
+        return validateSignature(message, candidates);
+    }
+
+    /**
+     * Validate a batch of messages, in parallel. Each message is checked by
+     * validateMessageExceptNonce, and then the nonces of all the messages
+     * that passed are checked and stored in one operation by validateNonces.
+     * A message whose signature is invalid doesn't use up its nonce.
+     * <p>
+     * These two methods, not validateMessage or validateTimestampAndNonce,
+     * are the hooks for a batch. So a subclass that overrides the checks of
+     * validateMessage (for example, to store nonces in a database) should
+     * also override validateMessageExceptNonce or validateNonces.
+     * 
+     * @param executor
+     *            runs the checks of each message, other than the nonce; or
+     *            null to run them in the calling thread. If the executor
+     *            rejects a message, that message and the ones after it are
+     *            invalid, with the RejectedExecutionException.
+     * @return the given batch, each element of which contains its result
+     * @throws InterruptedException
+     *             this thread was interrupted while waiting for the executor,
+     *             in which case some messages may not have been validated
+     */
+    public List<OAuthValidation> validateMessages(List<OAuthValidation> batch,
+            Executor executor) throws InterruptedException {
+        final long now = currentTimeMsec();
+        final CountDownLatch remaining = new CountDownLatch(batch.size());
+        for (int b = 0; b < batch.size(); ++b) {
+            final OAuthValidation validation = batch.get(b);
+            Runnable task = new Runnable() {
+                public void run() {
+                    try {
+                        validateMessageExceptNonce(validation.getMessage(),
+                                validation.getAccessor(), now);
+                    } catch (Exception e) {
+                        validation.setException(e);
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            };
+            if (executor == null) {
+                task.run();
+            } else {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    for (OAuthValidation rejected : batch.subList(b, batch.size())) {
+                        rejected.setException(e);
+                        remaining.countDown();
+                    }
+                    break;
+                }
+            }
+        }
+        remaining.await();
+        List<OAuthValidation> valid = new ArrayList<OAuthValidation>(batch.size());
+        for (OAuthValidation validation : batch) {
+            if (validation.getException() == null) {
+                valid.add(validation);
+            }
+        }
+        try {
+            validateNonces(valid, now);
+        } catch (Exception e) {
+            for (OAuthValidation validation : valid) {
+                validation.setException(e);
+            }
+        }
+        for (OAuthValidation validation : valid) {
+            validation.setDone();
+        }
+        return batch;
+    }
+
+    /**
+     * Check one message of a batch, in the same way as validateMessage but
+     * without checking its nonce, which validateNonces checks later. This is
+     * called by validateMessages, possibly by several threads concurrently.
+     * 
+     * @param currentTimeMsec
+     *            the time when validation of the batch started
+     */
+    protected void validateMessageExceptNonce(OAuthMessage message, OAuthAccessor accessor,
+            long currentTimeMsec) throws OAuthException, IOException, URISyntaxException {
+        checkSingleParameters(message);
+        validateVersion(message);
+        validateBodyHash(message);
+        message.requireParameters(OAuth.OAUTH_TIMESTAMP, OAuth.OAUTH_NONCE);
+        long timestamp = Long.parseLong(message.getParameter(OAuth.OAUTH_TIMESTAMP));
+        validateTimestamp(message, timestamp, currentTimeMsec);
+        validateSignature(message, accessor);
+    }
+
+    /**
+     * Check the nonces of a batch of messages, and store them. This is
+     * called by validateMessages, after validateMessageExceptNonce has
+     * succeeded for each of the messages, and records an exception in each
+     * message whose nonce is invalid.
+     * <p>
+     * This locks the store of used nonces once for the whole batch, and
+     * records NONCE_USED in each message whose nonce was used previously
+     * (including by an earlier message in the batch). It doesn't call
+     * validateNonce, so a subclass that stores nonces elsewhere should
+     * override this method too, and check a batch in one operation if it
+     * can.
+     * 
+     * @throws Exception
+     *             the nonces couldn't be checked, in which case all the
+     *             messages in the batch are invalid
+     */
+    protected void validateNonces(List<OAuthValidation> batch, long currentTimeMsec)
+            throws Exception {
+        List<UsedNonce> nonces = new ArrayList<UsedNonce>(batch.size());
+        for (OAuthValidation validation : batch) {
+            OAuthMessage message = validation.getMessage();
+            nonces.add(new UsedNonce(Long.parseLong(message.getParameter(OAuth.OAUTH_TIMESTAMP)),
+                    message.getParameter(OAuth.OAUTH_NONCE), message.getConsumerKey(), message
+                            .getToken()));
+        }
+        boolean[] added = new boolean[nonces.size()];
+        synchronized (usedNonces) {
+            for (int i = 0; i < added.length; ++i) {
+                added[i] = usedNonces.add(nonces.get(i));
+            }
+        }
+        for (int i = 0; i < added.length; ++i) {
+            if (!added[i]) {
+                batch.get(i).setException(new OAuthProblemException(OAuth.Problems.NONCE_USED));
+            }
+        }
+        removeOldNonces(currentTimeMsec);
+    }
+
     /** Throw an exception if any SINGLE_PARAMETERS occur repeatedly. */
     protected void checkSingleParameters(OAuthMessage message) throws IOException, OAuthException {
         // Check for repeated oauth_ parameters:
@@ -183,6 +343,26 @@ public class SimpleOAuthValidator implements OAuthValidator {
         }
     }
 
+    /**
+     * Throw an exception if the message has an oauth_body_hash and a
+     * form-encoded body, which the Body Hash extension doesn't allow. This
+     * checks only that the hash is allowed, not that it matches the body.
+     * The body is checked only as it's read through
+     * HttpRequestMessage.getBodyAsStream; so the application must read it to
+     * the end, close it or call HttpRequestMessage.verifyBody before acting
+     * on the body, or the hash is never checked.
+     */
+    protected void validateBodyHash(OAuthMessage message)
+    throws OAuthException, IOException {
+        if (message.getParameter(OAuth.OAUTH_BODY_HASH) != null
+                && OAuth.isFormEncoded(message.getBodyType())) {
+            OAuthProblemException problem = new OAuthProblemException(OAuth.Problems.PARAMETER_REJECTED);
+            problem.setParameter(OAuth.Problems.OAUTH_PARAMETERS_REJECTED, OAuth.formEncode(
+                    OAuth.newList(OAuth.OAUTH_BODY_HASH, message.getParameter(OAuth.OAUTH_BODY_HASH))));
+            throw problem;
+        }
+    }
+
     protected void validateVersion(OAuthMessage message)
     throws OAuthException, IOException {
         String versionString = message.getParameter(OAuth.OAUTH_VERSION);
@@ -251,9 +431,74 @@ public class SimpleOAuthValidator implements OAuthValidator {
     throws OAuthException, IOException, URISyntaxException {
         message.requireParameters(OAuth.OAUTH_CONSUMER_KEY,
                 OAuth.OAUTH_SIGNATURE_METHOD, OAuth.OAUTH_SIGNATURE);
-        OAuthSignatureMethod.newSigner(message, accessor).validate(message);
+        OAuthSignatureMethod.getSigner(message, accessor).validate(message);
     }
 
+    /**
+     * Check the signature of a message against several candidate accessors.
+     * The candidate whose consumer most recently matched a message with the
+     * same consumer key is tried first, so after keys are rotated most
+     * messages are verified by the first attempt. (The consumer is compared
+     * by identity, so this works best when the same OAuthConsumer objects
+     * are passed each time, in any order.) A candidate that can't verify
+     * signatures, for example because its key is missing, is skipped (see
+     * OAuthSignatureMethod.validate).
+     * 
+     * @return the candidate that verified the signature
+     */
+    protected OAuthAccessor validateSignature(OAuthMessage message,
+            List<? extends OAuthAccessor> candidates)
+    throws OAuthException, IOException, URISyntaxException {
+        message.requireParameters(OAuth.OAUTH_CONSUMER_KEY,
+                OAuth.OAUTH_SIGNATURE_METHOD, OAuth.OAUTH_SIGNATURE);
+        final String consumerKey = message.getConsumerKey();
+        final OAuthConsumer last = lastMatches.get(consumerKey);
+        List<OAuthAccessor> accessors = new ArrayList<OAuthAccessor>(candidates.size());
+        List<OAuthSignatureMethod> signers = new ArrayList<OAuthSignatureMethod>(candidates.size());
+        int first = 0;
+        OAuthException skipped = null;
+        int skippedCount = 0;
+        for (OAuthAccessor candidate : candidates) {
+            try {
+                signers.add(OAuthSignatureMethod.getSigner(message, candidate));
+            } catch (OAuthException e) {
+                skipped = (skipped == null) ? e : skipped;
+                ++skippedCount;
+                continue;
+            }
+            if (last != null && candidate.consumer == last) {
+                first = accessors.size();
+            }
+            accessors.add(candidate);
+        }
+        final int matched;
+        try {
+            matched = OAuthSignatureMethod.validate(message, signers, first);
+        } catch (OAuthProblemException e) {
+            if (skipped != null) {
+                Object more = e.getParameters().get(OAuthSignatureMethod.CANDIDATES_SKIPPED);
+                e.setParameter(OAuthSignatureMethod.CANDIDATES_SKIPPED, Integer
+                        .toString(skippedCount + ((more == null) ? 0 : Integer.parseInt(more
+                                .toString()))));
+                if (e.getCause() == null) {
+                    e.initCause(skipped);
+                }
+            }
+            throw e;
+        }
+        final OAuthAccessor match = accessors.get(matched);
+        if (last != match.consumer) {
+            lastMatches.put(consumerKey, match.consumer);
+        }
+        return match;
+    }
+
+    /**
+     * For each consumer key, the consumer of the candidate that most recently
+     * verified a signature.
+     */
+    private final LRUCache<String, OAuthConsumer> lastMatches = new LRUCache<String, OAuthConsumer>(1024);
+
     /** Get the number of milliseconds since midnight, January 1, 1970 UTC. */
     protected long currentTimeMsec() {
         return System.currentTimeMillis();
@@ -275,7 +520,12 @@ public class SimpleOAuthValidator implements OAuthValidator {
             StringBuilder key = new StringBuilder(String.format("%20d", Long.valueOf(timestamp)));
             // The blank padding ensures that timestamps are compared as numbers.
             for (String etc : nonceEtc) {
-                key.append("&").append(etc == null ? " " : OAuth.percentEncode(etc));
+                key.append("&");
+                if (etc == null) {
+                    key.append(" ");
+                } else {
+                    OAuth.percentEncode(etc, key);
+                }
                 // A null value is different from "" or any other String.
             }
             sortKey = key.toString();
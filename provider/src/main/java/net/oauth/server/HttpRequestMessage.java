@@ -21,9 +21,12 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
+import net.oauth.BodyHash;
+import net.oauth.EncodedParameter;
 import net.oauth.OAuth;
 import net.oauth.OAuthMessage;
 
@@ -35,16 +38,50 @@ import net.oauth.OAuthMessage;
 public class HttpRequestMessage extends OAuthMessage {
 
     public HttpRequestMessage(HttpServletRequest request, String URL) {
-        super(request.getMethod(), URL, getParameters(request));
+        super(request.getMethod(), URL, getCanonicalParameters(request));
         this.request = request;
         copyHeaders(request, getHeaders());
     }
 
     private final HttpServletRequest request;
 
+    private InputStream body = null;
+
+    /**
+     * Get the request body. If the request has an oauth_body_hash parameter,
+     * the body is checked against it as it's read: when the end of the body
+     * is reached or the stream is closed, a BodyHash.HashMismatchException is
+     * thrown if the body doesn't match. A servlet that might not read the
+     * body to the end through this stream must call verifyBody before acting
+     * on the request.
+     */
     @Override
     public InputStream getBodyAsStream() throws IOException {
-        return request.getInputStream();
+        if (body == null) {
+            InputStream in = request.getInputStream();
+            String hash = getParameter(OAuth.OAUTH_BODY_HASH);
+            if (in != null && hash != null) {
+                in = BodyHash.newVerifyingStream(in, hash);
+            }
+            body = in;
+        }
+        return body;
+    }
+
+    /**
+     * If the request has an oauth_body_hash parameter, check the body against
+     * it, reading whatever part of the body wasn't already read through
+     * getBodyAsStream. Bytes read directly from the HttpServletRequest aren't
+     * seen by the check, so the body won't match if any were read that way.
+     *
+     * @throws BodyHash.HashMismatchException
+     *             the body doesn't match
+     */
+    public void verifyBody() throws IOException {
+        InputStream in = getBodyAsStream();
+        if (in instanceof BodyHash.VerifyingInputStream) {
+            ((BodyHash.VerifyingInputStream) in).verify();
+        }
     }
 
     @Override
@@ -69,24 +106,176 @@ public class HttpRequestMessage extends OAuthMessage {
 
     public static List<OAuth.Parameter> getParameters(HttpServletRequest request) {
         List<OAuth.Parameter> list = new ArrayList<OAuth.Parameter>();
+        addAuthorizationParameters(request, list);
+        for (Object e : request.getParameterMap().entrySet()) {
+            Map.Entry<String, String[]> entry = (Map.Entry<String, String[]>) e;
+            String name = entry.getKey();
+            for (String value : entry.getValue()) {
+                list.add(new OAuth.Parameter(name, value));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the same parameters as getParameters, but parse the query string
+     * directly from request.getQueryString(). Names and values whose
+     * encoding is already canonical (as specified by RFC 3986) aren't encoded
+     * again to construct a signature base string. The other parameters,
+     * including those from a form-encoded request body, are taken from
+     * request.getParameterMap(). If the query string can't be interpreted
+     * without knowing its character encoding, this simply returns
+     * getParameters(request).
+     */
+    private static List<? extends Map.Entry> getCanonicalParameters(
+            HttpServletRequest request) {
+        String query = request.getQueryString();
+        List<EncodedParameter> fromQuery = (query == null) ? null : parseQuery(query);
+        if (query != null && fromQuery == null) {
+            return getParameters(request); // odd encoding
+        }
+        Map<String, List<String>> queryValues = new HashMap<String, List<String>>();
+        if (fromQuery != null) {
+            for (EncodedParameter parameter : fromQuery) {
+                List<String> values = queryValues.get(parameter.getKey());
+                if (values == null) {
+                    queryValues.put(parameter.getKey(), values = new ArrayList<String>(1));
+                }
+                values.add(parameter.getValue());
+            }
+        }
+        List<Map.Entry<String, String>> list = new ArrayList<Map.Entry<String, String>>();
+        addAuthorizationParameters(request, list);
+        if (fromQuery != null) {
+            list.addAll(fromQuery);
+        }
+        // The parameters that aren't from the query string came from the body:
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) request.getParameterMap()).entrySet()) {
+            String name = (String) entry.getKey();
+            List<String> values = queryValues.remove(name);
+            for (String value : (String[]) entry.getValue()) {
+                if (values == null || !values.remove(value)) {
+                    list.add(new EncodedParameter(name, value));
+                }
+            }
+            if (values != null && !values.isEmpty()) {
+                // The servlet container decoded the query differently.
+                return getParameters(request);
+            }
+        }
+        if (!queryValues.isEmpty()) {
+            return getParameters(request);
+        }
+        return list;
+    }
+
+    private static void addAuthorizationParameters(HttpServletRequest request,
+            List<? super OAuth.Parameter> into) {
         for (Enumeration<String> headers = request.getHeaders("Authorization"); headers != null
                 && headers.hasMoreElements();) {
             String header = headers.nextElement();
             for (OAuth.Parameter parameter : OAuthMessage
                     .decodeAuthorization(header)) {
                 if (!"realm".equalsIgnoreCase(parameter.getKey())) {
-                    list.add(parameter);
+                    into.add(parameter);
                 }
             }
         }
-        for (Object e : request.getParameterMap().entrySet()) {
-            Map.Entry<String, String[]> entry = (Map.Entry<String, String[]>) e;
-            String name = entry.getKey();
-            for (String value : entry.getValue()) {
-                list.add(new OAuth.Parameter(name, value));
+    }
+
+    /**
+     * Parse a query string, retaining the canonical encoding of each name and
+     * value whose encoding is already canonical.
+     * 
+     * @return the parameters, or null if the query contains non-ASCII
+     *         characters or escapes, or a malformed escape.
+     */
+    static List<EncodedParameter> parseQuery(String query) {
+        List<EncodedParameter> list = new ArrayList<EncodedParameter>();
+        final int length = query.length();
+        for (int start = 0; start < length;) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                int equals = query.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    equals = end;
+                }
+                final int valueStart = (equals < end) ? equals + 1 : end;
+                int nameForm = classify(query, start, equals);
+                int valueForm = classify(query, valueStart, end);
+                if (nameForm == ODD || valueForm == ODD) {
+                    return null;
+                }
+                String name = OAuth.decodePercent(query.substring(start, equals));
+                String value = OAuth.decodePercent(query.substring(valueStart, end));
+                list.add(new EncodedParameter(name, value, //
+                        (nameForm == CANONICAL) ? toASCII(query, start, equals) : null,
+                        (valueForm == CANONICAL) ? toASCII(query, valueStart, end) : null));
             }
+            start = end + 1;
         }
         return list;
     }
 
+    /**
+     * Classify the encoding of s[from, to).
+     * 
+     * @return CANONICAL if it contains only unreserved characters and
+     *         escapes of other ASCII characters, with upper case hex digits;
+     *         ASCII if it's some other encoding of ASCII characters; or ODD
+     *         if it contains other characters, escapes of non-ASCII bytes or
+     *         a malformed escape.
+     */
+    private static int classify(String s, int from, int to) {
+        int form = CANONICAL;
+        for (int i = from; i < to; ++i) {
+            char c = s.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= to) {
+                    return ODD;
+                }
+                char h = s.charAt(++i);
+                char l = s.charAt(++i);
+                if (h < '0' || h > '7' || !isHexDigit(l)) {
+                    return ODD; // malformed, or not ASCII
+                }
+                if (Character.isLowerCase(l)
+                        || isUnreserved((char) (((h - '0') << 4) | Character.digit(l, 16)))) {
+                    form = ASCII;
+                }
+            } else if (c >= 0x80) {
+                return ODD;
+            } else if (!isUnreserved(c)) {
+                form = ASCII;
+            }
+        }
+        return form;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+    }
+
+    private static byte[] toASCII(String s, int from, int to) {
+        byte[] into = new byte[to - from];
+        for (int i = from; i < to; ++i) {
+            into[i - from] = (byte) s.charAt(i);
+        }
+        return into;
+    }
+
+    private static final int CANONICAL = 0;
+
+    private static final int ASCII = 1;
+
+    private static final int ODD = 2;
+
 }
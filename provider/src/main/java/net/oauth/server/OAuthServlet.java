@@ -21,6 +21,7 @@ import java.util.Map;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import net.oauth.ByteSink;
 import net.oauth.OAuth;
 import net.oauth.OAuthMessage;
 import net.oauth.OAuthProblemException;
@@ -115,7 +116,10 @@ public class OAuthServlet {
         response.resetBuffer();
         response.setContentType(OAuth.FORM_ENCODED + ";charset="
                 + OAuth.ENCODING);
-        OAuth.formEncode(parameters, response.getOutputStream());
+        ByteSink form = new ByteSink();
+        form.writeFormEncoded(parameters);
+        response.setContentLength(form.size());
+        form.writeTo(response.getOutputStream());
     }
 
     /**
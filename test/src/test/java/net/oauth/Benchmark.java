@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+/**
+ * A simple harness for comparing the speed of alternative implementations.
+ * Each candidate is warmed up, and then timed for several rounds; the best
+ * round is reported. Benchmarks are run from a main method, not as tests:
+ * <pre>
+ * mvn -f test/pom.xml test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=net.oauth.PercentEncodingBenchmark
+ * </pre>
+ */
+public abstract class Benchmark {
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    private final String name;
+
+    /**
+     * Do the work to be timed, once.
+     * 
+     * @return something computed from the work, so it isn't optimized away
+     */
+    protected abstract Object run() throws Exception;
+
+    /** Run each candidate the given number of times per round, and print the results. */
+    public static void compare(int iterations, Benchmark... candidates) throws Exception {
+        for (Benchmark candidate : candidates) {
+            candidate.time(iterations); // warm up
+        }
+        for (Benchmark candidate : candidates) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; ++round) {
+                best = Math.min(best, candidate.time(iterations));
+            }
+            System.out.println(String.format("%-40s %,12.1f ns/op", candidate.name,
+                    ((double) best) / iterations));
+        }
+        System.out.println("(" + sink + ")");
+    }
+
+    /** @return the elapsed time, in nanoseconds */
+    private long time(int iterations) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            Object result = run();
+            if (result != null) {
+                sink += result.hashCode();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static final int ROUNDS = 5;
+
+    /** Accumulates results, so the JIT can't discard them. */
+    private static volatile int sink;
+
+}
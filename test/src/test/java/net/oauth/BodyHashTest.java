@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+public class BodyHashTest extends TestCase {
+
+    /** The example from the Body Hash extension. */
+    private static final String BODY = "Hello World!";
+    private static final String HASH = "Lve95gjOVATpfV8EL5X4nxwjKHE=";
+
+    public void testHash() throws Exception {
+        byte[] body = BODY.getBytes("US-ASCII");
+        assertEquals(HASH, BodyHash.hash(body));
+        assertEquals(HASH, BodyHash.hash(new ByteArrayInputStream(body)));
+        assertEquals("2jmj7l5rSw0yVb/vlWAYkK/YBwk=", BodyHash.hash(new byte[0]));
+        File file = File.createTempFile("BodyHashTest", ".txt");
+        try {
+            OutputStream out = new FileOutputStream(file);
+            out.write(body);
+            out.close();
+            assertEquals(HASH, BodyHash.hash(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testVerify() throws Exception {
+        byte[] body = BODY.getBytes("US-ASCII");
+        assertEquals(BODY, readAll(BodyHash.newVerifyingStream(new ByteArrayInputStream(body),
+                HASH)));
+        body[0] = 'J';
+        InputStream in = BodyHash.newVerifyingStream(new ByteArrayInputStream(body), HASH);
+        assertEquals('J', in.read());
+        assertEquals(5, in.skip(5));
+        try {
+            readAll(in);
+            fail("verified a modified body");
+        } catch (BodyHash.HashMismatchException expected) {
+            OAuthProblemException problem = (OAuthProblemException) expected.getCause();
+            assertEquals(OAuth.Problems.SIGNATURE_INVALID, problem.getProblem());
+            assertEquals(HASH, problem.getParameters().get(OAuth.OAUTH_BODY_HASH));
+        }
+        // The failure is latched:
+        try {
+            in.read();
+            fail("verified a modified body after a mismatch");
+        } catch (BodyHash.HashMismatchException expected) {
+        }
+    }
+
+    public void testVerifyUnread() throws Exception {
+        byte[] body = BODY.getBytes("US-ASCII");
+        BodyHash.VerifyingInputStream in = BodyHash.newVerifyingStream(
+                new ByteArrayInputStream(body), HASH);
+        assertEquals('H', in.read());
+        in.verify();
+        in.verify();
+        assertEquals(-1, in.read());
+        in.close();
+        body[body.length - 1] = '?';
+        in = BodyHash.newVerifyingStream(new ByteArrayInputStream(body), HASH);
+        assertEquals('H', in.read());
+        try {
+            in.close();
+            fail("closed a modified body without a mismatch");
+        } catch (BodyHash.HashMismatchException expected) {
+        }
+        try {
+            in.verify();
+            fail("verified a modified body after a mismatch");
+        } catch (BodyHash.HashMismatchException expected) {
+        }
+    }
+
+    public void testFormRejected() throws Exception {
+        OAuthMessage message = new OAuthMessage("POST", "http://example.com/", OAuth.newList(
+                OAuth.OAUTH_BODY_HASH, HASH));
+        message.getHeaders().add(new OAuth.Parameter("Content-Type", OAuth.FORM_ENCODED));
+        try {
+            new SimpleOAuthValidator().validateBodyHash(message);
+            fail("accepted oauth_body_hash with a form-encoded body");
+        } catch (OAuthProblemException expected) {
+            assertEquals(OAuth.Problems.PARAMETER_REJECTED, expected.getProblem());
+        }
+        message.getHeaders().clear();
+        message.getHeaders().add(new OAuth.Parameter("Content-Type", "application/json"));
+        new SimpleOAuthValidator().validateBodyHash(message);
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        StringBuilder s = new StringBuilder();
+        for (int c; (c = in.read()) >= 0;) {
+            s.append((char) c);
+        }
+        return s.toString();
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class CharsetCodecTest extends TestCase {
+
+    private static final String[] CHARSETS = { "UTF-8", "ISO-8859-1",
+            "US-ASCII", "UTF-16BE", "UTF-16" };
+
+    private static final String[] STRINGS = { "", "abc", "a b+c%d",
+            "\u00E9t\u00E9", "\u20AC100", "\u00FF\u0100\u07FF\u0800\uFFFD",
+            "\uD834\uDD1E clef", // supplementary
+            "x\uD834", "\uDD1Ey", "\uDD1E\uD834" // unpaired surrogates
+    };
+
+    public void testEncode() throws Exception {
+        for (String name : CHARSETS) {
+            Charset charset = CharsetCodec.forName(name);
+            for (String s : STRINGS) {
+                String label = name + " " + s;
+                byte[] expected = s.getBytes(name);
+                byte[] actual = CharsetCodec.encode(s, charset);
+                assertTrue(label, Arrays.equals(expected, actual));
+                assertTrue(label, Arrays.equals(expected, CharsetCodec.encode(
+                        new StringBuilder(s), charset)));
+            }
+        }
+    }
+
+    public void testEncodeIntoBuffer() throws Exception {
+        for (String name : CHARSETS) {
+            Charset charset = CharsetCodec.forName(name);
+            for (String s : STRINGS) {
+                ByteBuffer into = ByteBuffer.allocate(2);
+                into.put((byte) '!');
+                into = CharsetCodec.encode(s, charset, into);
+                byte[] expected = concat(new byte[] { '!' }, s.getBytes(name));
+                assertEquals(name + " " + s, expected.length, into.position());
+                byte[] actual = new byte[into.position()];
+                into.flip();
+                into.get(actual);
+                assertTrue(name + " " + s, Arrays.equals(expected, actual));
+            }
+        }
+    }
+
+    public void testDecode() throws Exception {
+        for (String name : CHARSETS) {
+            Charset charset = CharsetCodec.forName(name);
+            for (String s : STRINGS) {
+                byte[] bytes = s.getBytes(name);
+                assertEquals(name + " " + s, new String(bytes, name),
+                        CharsetCodec.decode(bytes, charset));
+                byte[] padded = concat(concat(new byte[] { 'x' }, bytes),
+                        new byte[] { 'y' });
+                assertEquals(name + " " + s, new String(bytes, name),
+                        CharsetCodec.decode(padded, 1, bytes.length, charset));
+            }
+        }
+    }
+
+    public void testDecodeMalformed() throws Exception {
+        final byte[][] malformed = { { (byte) 0x80 }, { 'a', (byte) 0xC3 },
+                { (byte) 0xC3, 'a' }, { 'a', (byte) 0xE2, (byte) 0x82, 'b' },
+                { (byte) 0xF0, (byte) 0x9D, (byte) 0x84 },
+                { (byte) 0xFF, (byte) 0xFE, 'z' } };
+        for (String name : CHARSETS) {
+            Charset charset = CharsetCodec.forName(name);
+            for (byte[] bytes : malformed) {
+                assertEquals(name + " " + Arrays.toString(bytes), new String(
+                        bytes, name), CharsetCodec.decode(bytes, charset));
+            }
+        }
+    }
+
+    public void testForName() {
+        assertSame(CharsetCodec.UTF_8, CharsetCodec.forName("UTF-8"));
+        assertSame(CharsetCodec.forName("utf8"), CharsetCodec.forName("utf8"));
+        try {
+            CharsetCodec.forName("no-such-charset");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static byte[] concat(byte[] x, byte[] y) {
+        byte[] into = new byte[x.length + y.length];
+        System.arraycopy(x, 0, into, 0, x.length);
+        System.arraycopy(y, 0, into, x.length, y.length);
+        return into;
+    }
+
+}
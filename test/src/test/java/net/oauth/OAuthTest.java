@@ -16,7 +16,17 @@
 
 package net.oauth;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -35,6 +45,8 @@ public class OAuthTest extends TestCase {
             , "DEL", "\u007F", "%7F" //
             , "Latin", "\u0080", "%C2%80" //
             , "CJK", "\u3001", "%E3%80%81" //
+            , "supplementary", "\uD83D\uDE00", "%F0%9F%98%80" //
+            , "mixed", "a b\u00E9~", "a%20b%C3%A9~" //
     };
 
     private static final String[] FLEXIBLE =
@@ -62,6 +74,101 @@ public class OAuthTest extends TestCase {
             fail(errors.toString());
     }
 
+    public void testEncodeUnchanged() {
+        String unreserved = "abc-XYZ_0.9~";
+        assertSame(unreserved, OAuth.percentEncode(unreserved));
+        assertEquals("", OAuth.percentEncode((String) null));
+    }
+
+    public void testEncodeInto() throws Exception {
+        for (int c = 0; c < STANDARD.length; c += 3) {
+            String label = STANDARD[c];
+            String input = STANDARD[c + 1];
+            String expected = STANDARD[c + 2];
+            StringBuilder into = new StringBuilder("x=");
+            assertSame(label, into, OAuth.percentEncode(input, into));
+            assertEquals(label, "x=" + expected, into.toString());
+            Appendable appendable = new StringBuffer();
+            OAuth.percentEncode(input, appendable);
+            assertEquals(label, expected, appendable.toString());
+        }
+        assertEquals("%3F", OAuth.percentEncode("\uD83D"));
+    }
+
+    public void testFormEncode() throws Exception {
+        List<OAuth.Parameter> parameters = OAuth.newList("a b", "c&d", "e", null,
+                "\u3001", "~*", "f", "");
+        final String expected = "a%20b=c%26d&e=&%E3%80%81=~%2A&f=";
+        assertEquals(expected, OAuth.formEncode(parameters));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        OAuth.formEncode(parameters, stream);
+        assertEquals(expected, new String(stream.toByteArray(), "US-ASCII"));
+
+        stream.reset();
+        OAuth.formEncode(parameters, Channels.newChannel(stream));
+        assertEquals(expected, new String(stream.toByteArray(), "US-ASCII"));
+
+        ByteBuffer small = ByteBuffer.allocate(4);
+        small.put((byte) 'x');
+        ByteBuffer buffer = OAuth.formEncode(parameters, small);
+        buffer.flip();
+        byte[] actual = new byte[buffer.remaining()];
+        buffer.get(actual);
+        assertEquals("x" + expected, new String(actual, "US-ASCII"));
+
+        ByteSink sink = new ByteSink(1);
+        for (int i = 0; i < 2; ++i) {
+            sink.clear();
+            sink.writeFormEncoded(parameters);
+            assertEquals(expected, sink.toString());
+            assertEquals(expected.length(), sink.size());
+        }
+    }
+
+    public void testEncodedParameter() throws Exception {
+        List<EncodedParameter> parameters = new ArrayList<EncodedParameter>();
+        for (OAuth.Parameter p : OAuth.newList("a b", "c&d", "e", null,
+                "\u3001", "~*", "f", "")) {
+            parameters.add(EncodedParameter.of(p));
+        }
+        final String expected = "a%20b=c%26d&e=&%E3%80%81=~%2A&f=";
+        assertEquals(expected, OAuth.formEncode(parameters));
+        ByteSink sink = new ByteSink(1);
+        sink.writeFormEncoded(parameters);
+        assertEquals(expected, sink.toString());
+
+        EncodedParameter p = parameters.get(0);
+        assertSame(p, EncodedParameter.of(p));
+        assertSame(p.getEncodedKey(), p.getEncodedKey());
+        assertEquals("c&d", p.setValue("g/h"));
+        assertEquals("a%20b=g%2Fh", p.toString());
+        assertEquals(new EncodedParameter("a b", "g/h"), p);
+        // Equal to any Map.Entry with the same key and value:
+        OAuth.Parameter same = new OAuth.Parameter("a b", "g/h");
+        assertEquals(same, p);
+        assertEquals(p, same);
+        assertEquals(same.hashCode(), p.hashCode());
+        Map.Entry<String, String> entry = Collections.singletonMap("a b", "g/h").entrySet()
+                .iterator().next();
+        assertEquals(p, entry);
+        assertEquals(entry.hashCode(), p.hashCode());
+        assertEquals(entry.hashCode(), same.hashCode());
+        assertFalse(p.equals(new OAuth.Parameter("a b", "x")));
+        OAuthMessage message = new OAuthMessage("GET", "http://example.com/", null);
+        message.addParameter("a b", "g/h");
+        assertTrue(message.getParameters().contains(same));
+        assertTrue(message.getParameters().contains(p));
+        // The same UTF-8 encoding, including a surrogate pair and an unpaired surrogate:
+        final String unicode = "\u00e9\u3001\ud83d\ude00\ud83d";
+        assertEquals("%C3%A9%E3%80%81%F0%9F%98%80%3F", OAuth.percentEncode(unicode));
+        sink.clear();
+        sink.writePercentEncoded(unicode);
+        assertEquals(OAuth.percentEncode(unicode), sink.toString());
+        assertEquals(OAuth.percentEncode(unicode), OAuth.percentEncode(new String(CharsetCodec
+                .encode(unicode, CharsetCodec.UTF_8), "UTF-8")));
+    }
+
     public void testDecodeStandard() {
         testDecode(STANDARD);
     }
@@ -111,6 +218,116 @@ public class OAuthTest extends TestCase {
 	assertEquals("", msgParams.get(0).getValue());
     }
 
+    public void testDecodeFormSegments() throws Exception {
+        final String[][] forms = { { "a=b&", "a=b" }, { "&a=b", "=&a=b" },
+                { "a&&b=%3D", "a=&=&b=%3D" }, { "&&", "" }, { "a+b=%E3%80%81+", "a%20b=%E3%80%81%20" } };
+        for (String[] form : forms) {
+            String label = form[0];
+            String expected = form[1];
+            List<OAuth.Parameter> decoded = OAuth.decodeForm(form[0]);
+            assertEquals(label, expected, OAuth.formEncode(decoded));
+            byte[] bytes = ("x" + form[0] + "y").getBytes("US-ASCII");
+            assertEquals(label, decoded, OAuth.decodeForm(bytes, 1, bytes.length - 2));
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).position(1);
+            buffer.limit(bytes.length - 1);
+            assertEquals(label, decoded, OAuth.decodeFormBytes(buffer));
+            assertEquals(label, 1, buffer.position());
+        }
+        try {
+            OAuth.decodeForm("a=%2");
+            fail("incomplete escape");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            OAuth.decodeForm("a=%zz".getBytes("US-ASCII"), 0, 5);
+            fail("invalid escape");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testDecodeFormStream() throws Exception {
+        StringBuilder big = new StringBuilder("big=");
+        for (int i = 0; i < 300; ++i) {
+            big.append("%E3%80%81");
+        }
+        final String[] forms = { "", " \r\n", "a=b", " a=b&c=d\n", "a=b &\n", "&a=b&&",
+                "x=1&" + big + "&y=%20+2 ", big + "&" + big };
+        for (String form : forms) {
+            byte[] bytes = form.getBytes("US-ASCII");
+            List<OAuth.Parameter> expected = OAuth.decodeForm(form.trim());
+            assertEquals(form, expected,
+                    OAuth.decodeForm(new ByteArrayInputStream(bytes), bytes.length));
+        }
+        byte[] bytes = big.toString().getBytes("US-ASCII");
+        try {
+            OAuth.decodeForm(new ByteArrayInputStream(bytes), bytes.length - 1);
+            fail("too long");
+        } catch (OAuth.FormTooLongException expected) {
+            assertEquals(bytes.length - 1, expected.getMaxLength());
+            OAuthProblemException problem = expected.getProblem();
+            assertEquals(OAuth.FormTooLongException.PROBLEM, problem.getProblem());
+            assertEquals((bytes.length - 1) + "", problem.getParameters().get(
+                    OAuth.FormTooLongException.MAX_FORM_LENGTH));
+        }
+        // Characters that aren't percent-encoded are decoded with the charset:
+        final String form = " a=\u00e9&\u00e9=%C3%A9+\u00e0\r\n";
+        List<OAuth.Parameter> expected = OAuth.decodeForm(form.trim());
+        assertEquals("\u00e9 \u00e0", expected.get(1).getValue());
+        for (String charset : new String[] { "ISO-8859-1", "UTF-8", "UTF-16" }) {
+            bytes = form.getBytes(charset);
+            assertEquals(charset, expected, OAuth.decodeForm(new ByteArrayInputStream(bytes),
+                    charset, bytes.length));
+            try {
+                OAuth.decodeForm(new ByteArrayInputStream(bytes), charset, bytes.length - 1);
+                fail(charset + " too long");
+            } catch (OAuth.FormTooLongException e) {
+            }
+        }
+        try {
+            OAuth.decodeForm(new ByteArrayInputStream(bytes), "no such charset", bytes.length);
+            fail("decoded an unknown charset");
+        } catch (IOException e) {
+        }
+    }
+
+    public void testDecodeUnchanged() {
+        String plain = "abc-XYZ_0.9~";
+        assertSame(plain, OAuth.decodePercent(plain));
+        assertNull(OAuth.decodePercent(null));
+    }
+
+    /** Encode and decode strings long enough to be scanned in groups. */
+    public void testLongStrings() throws Exception {
+        final String alphabet = "abcXYZ019-._~+%&= /*\u00e9\u3001";
+        Random random = new Random(11);
+        for (int length = 0; length < 40; ++length) {
+            for (int k = 0; k < 20; ++k) {
+                StringBuilder b = new StringBuilder();
+                for (int i = 0; i < length; ++i) {
+                    // Mostly unreserved, with an occasional special character:
+                    int limit = (random.nextInt(8) == 0) ? alphabet.length() : 10;
+                    b.append(alphabet.charAt(random.nextInt(limit)));
+                }
+                String s = b.toString();
+                String expected = URLEncoder.encode(s, "UTF-8").replace("+", "%20")
+                        .replace("*", "%2A").replace("%7E", "~");
+                String encoded = OAuth.percentEncode(s);
+                assertEquals(s, expected, encoded);
+                assertEquals(s, OAuth.decodePercent(encoded));
+                String form = "a=" + encoded + "&" + encoded + "=" + encoded + "&&z";
+                List<OAuth.Parameter> parameters = OAuth.decodeForm(form);
+                assertEquals(form, 4, parameters.size());
+                assertEquals(s, parameters.get(0).getValue());
+                assertEquals(s, parameters.get(1).getKey());
+                assertEquals(s, parameters.get(1).getValue());
+                byte[] bytes = form.getBytes("US-ASCII");
+                assertEquals(form, parameters, OAuth.decodeForm(bytes, 0, bytes.length));
+                assertEquals(form, parameters, OAuth.decodeForm(new ByteArrayInputStream(bytes), bytes.length));
+            }
+        }
+    }
+
     private static void testDecode(String[] cases) {
         StringBuffer errors = new StringBuffer();
         for (int c = 0; c < cases.length; c += 3) {
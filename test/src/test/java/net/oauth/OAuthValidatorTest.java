@@ -15,7 +15,21 @@
  */
 package net.oauth;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
 import junit.framework.TestCase;
+import net.oauth.signature.OAuthSignatureMethod;
+import net.oauth.signature.RSA_SHA1;
 
 /**
  * @author Dirk Balfanz
@@ -150,4 +164,202 @@ public class OAuthValidatorTest extends TestCase {
         validator.validateVersion(msg);
     }
 
+    public void testKeyRotation() throws Exception {
+        OAuthAccessor oldKey = new OAuthAccessor(new OAuthConsumer(null, "ck", "old", null));
+        OAuthAccessor newKey = new OAuthAccessor(new OAuthConsumer(null, "ck", "new", null));
+        List<OAuthAccessor> candidates = new ArrayList<OAuthAccessor>();
+        candidates.add(oldKey);
+        candidates.add(newKey);
+        final long timestamp = currentTimeMsec / 1000;
+        for (int i = 0; i < 6; ++i) {
+            OAuthAccessor client = (i < 3) ? oldKey : newKey;
+            OAuthMessage message = new OAuthMessage("GET", "http://example.com/", null);
+            message.addParameter(OAuth.OAUTH_TIMESTAMP, timestamp + "");
+            message.addParameter(OAuth.OAUTH_NONCE, "rotate" + i);
+            message.addRequiredParameters(client);
+            assertSame(client, validator.validateMessage(message, candidates));
+            List<OAuthSignatureMethod> signers = new ArrayList<OAuthSignatureMethod>();
+            for (OAuthAccessor candidate : candidates) {
+                signers.add(OAuthSignatureMethod.newSigner(message, candidate));
+            }
+            for (int first = -1; first <= 2; ++first) {
+                assertEquals(candidates.indexOf(client), OAuthSignatureMethod.validate(
+                        message, signers, first));
+            }
+        }
+        OAuthMessage message = new OAuthMessage("GET", "http://example.com/", null);
+        message.addParameter(OAuth.OAUTH_NONCE, "rotate");
+        message.addRequiredParameters(new OAuthAccessor(new OAuthConsumer(null, "ck",
+                "other", null)));
+        try {
+            validator.validateMessage(message, candidates);
+            fail("validated a message signed with neither key");
+        } catch (OAuthProblemException expected) {
+            assertEquals("signature_invalid", expected.getProblem());
+        }
+    }
+
+    public void testKeyRotationWithUnusableCandidate() throws Exception {
+        KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        OAuthConsumer client = new OAuthConsumer(null, "ck", null, null);
+        client.setProperty(RSA_SHA1.PRIVATE_KEY, keys.getPrivate());
+        client.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+        OAuthConsumer noKey = new OAuthConsumer(null, "ck", null, null);
+        OAuthConsumer good = new OAuthConsumer(null, "ck", null, null);
+        good.setProperty(RSA_SHA1.PUBLIC_KEY, keys.getPublic());
+        List<OAuthAccessor> candidates = new ArrayList<OAuthAccessor>();
+        candidates.add(new OAuthAccessor(noKey));
+        candidates.add(new OAuthAccessor(good));
+        final long timestamp = currentTimeMsec / 1000;
+        for (int i = 0; i < 3; ++i) {
+            // The candidate without a key is skipped, in any order:
+            Collections.reverse(candidates);
+            OAuthMessage message = new OAuthMessage("GET", "http://example.com/", null);
+            message.addParameter(OAuth.OAUTH_TIMESTAMP, timestamp + "");
+            message.addParameter(OAuth.OAUTH_NONCE, "unusable" + i);
+            message.addRequiredParameters(new OAuthAccessor(client));
+            assertSame(good, validator.validateMessage(message, candidates).consumer);
+        }
+        OAuthMessage message = new OAuthMessage("GET", "http://example.com/", null);
+        message.addParameter(OAuth.OAUTH_TIMESTAMP, timestamp + "");
+        message.addParameter(OAuth.OAUTH_NONCE, "unusable");
+        message.addRequiredParameters(new OAuthAccessor(client));
+        try {
+            validator.validateMessage(message, Collections.singletonList(new OAuthAccessor(noKey)));
+            fail("validated a message with no usable candidate");
+        } catch (OAuthProblemException expected) {
+            assertEquals("signature_invalid", expected.getProblem());
+            assertEquals("1", expected.getParameters().get(
+                    OAuthSignatureMethod.CANDIDATES_SKIPPED));
+            assertNotNull(expected.getCause());
+        }
+    }
+
+    public void testBatch() throws Exception {
+        OAuthConsumer consumer = new OAuthConsumer(null, "ck", "cs", null);
+        OAuthAccessor client = new OAuthAccessor(consumer);
+        client.tokenSecret = "ts";
+        OAuthAccessor server = new OAuthAccessor(consumer);
+        server.tokenSecret = "ts";
+        final long timestamp = currentTimeMsec / 1000;
+        List<OAuthValidation> batch = new ArrayList<OAuthValidation>();
+        for (int i = 0; i < 100; ++i) {
+            OAuthMessage message = new OAuthMessage("GET", "http://example.com/" + i, null);
+            message.addParameter(OAuth.OAUTH_TIMESTAMP, timestamp + "");
+            message.addParameter(OAuth.OAUTH_NONCE, "n" + (i % 90));
+            message.addRequiredParameters(client);
+            if (i % 10 == 5) { // invalidate the signature
+                message.addParameter("x", "y");
+            }
+            batch.add(new OAuthValidation(message, server));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertSame(batch, validator.validateMessages(batch, executor));
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < batch.size(); ++i) {
+            OAuthValidation result = batch.get(i);
+            assertTrue(result.isDone());
+            Exception problem = result.getException();
+            if (i % 10 == 5) {
+                assertFalse(result.isValid());
+                assertEquals("signature_invalid", ((OAuthProblemException) problem).getProblem());
+            } else if (i >= 90 && (i - 90) % 10 != 5) {
+                // The nonce was used by an earlier message in the batch.
+                assertEquals(OAuth.Problems.NONCE_USED, ((OAuthProblemException) problem).getProblem());
+            } else {
+                assertTrue(i + " " + problem, result.isValid());
+            }
+        }
+        // Validating again finds the nonces used, except the ones whose
+        // signatures were invalid:
+        validator.validateMessages(batch, null);
+        for (int i = 0; i < batch.size(); ++i) {
+            OAuthValidation result = batch.get(i);
+            if (i % 10 != 5) {
+                assertEquals(OAuth.Problems.NONCE_USED, ((OAuthProblemException) result
+                        .getException()).getProblem());
+            }
+        }
+    }
+
+    public void testBatchWithNonceStore() throws Exception {
+        // A subclass that stores nonces elsewhere overrides the batch hooks:
+        final List<String> stored = new ArrayList<String>();
+        final List<String> checked = new ArrayList<String>();
+        SimpleOAuthValidator v = new SimpleOAuthValidator() {
+            @Override
+            protected long currentTimeMsec() {return currentTimeMsec;}
+            @Override
+            protected void validateMessageExceptNonce(OAuthMessage message,
+                    OAuthAccessor accessor, long currentTimeMsec)
+                    throws OAuthException, IOException, URISyntaxException {
+                super.validateMessageExceptNonce(message, accessor, currentTimeMsec);
+                synchronized (checked) {
+                    checked.add(message.getParameter(OAuth.OAUTH_NONCE));
+                }
+            }
+            @Override
+            protected void validateNonces(List<OAuthValidation> batch, long currentTimeMsec)
+                    throws Exception {
+                for (OAuthValidation validation : batch) {
+                    String nonce = validation.getMessage().getParameter(OAuth.OAUTH_NONCE);
+                    if (stored.contains(nonce)) {
+                        validation.setException(new OAuthProblemException(
+                                OAuth.Problems.NONCE_USED));
+                    } else {
+                        stored.add(nonce);
+                    }
+                }
+            }
+        };
+        List<OAuthValidation> batch = newBatch(3);
+        v.validateMessages(batch, null);
+        assertEquals(3, checked.size());
+        assertEquals(3, stored.size());
+        for (OAuthValidation result : batch) {
+            assertTrue(result.isValid());
+        }
+        batch = newBatch(3);
+        v.validateMessages(batch, null);
+        for (OAuthValidation result : batch) {
+            assertEquals(OAuth.Problems.NONCE_USED, ((OAuthProblemException) result
+                    .getException()).getProblem());
+        }
+    }
+
+    public void testBatchRejected() throws Exception {
+        List<OAuthValidation> batch = newBatch(3);
+        final int[] executed = {0};
+        validator.validateMessages(batch, new Executor() {
+            public void execute(Runnable task) {
+                if (executed[0] >= 1) {
+                    throw new RejectedExecutionException();
+                }
+                ++executed[0];
+                task.run();
+            }
+        });
+        assertTrue(batch.get(0).isValid());
+        for (OAuthValidation result : batch.subList(1, 3)) {
+            assertTrue(result.isDone());
+            assertTrue(result.getException() instanceof RejectedExecutionException);
+        }
+    }
+
+    private List<OAuthValidation> newBatch(int size) throws Exception {
+        OAuthAccessor accessor = new OAuthAccessor(new OAuthConsumer(null, "ck", "cs", null));
+        List<OAuthValidation> batch = new ArrayList<OAuthValidation>();
+        for (int i = 0; i < size; ++i) {
+            OAuthMessage message = new OAuthMessage("GET", "http://example.com/" + i, null);
+            message.addParameter(OAuth.OAUTH_TIMESTAMP, (currentTimeMsec / 1000) + "");
+            message.addParameter(OAuth.OAUTH_NONCE, "n" + i);
+            message.addRequiredParameters(accessor);
+            batch.add(new OAuthValidation(message, accessor));
+        }
+        return batch;
+    }
+
 }
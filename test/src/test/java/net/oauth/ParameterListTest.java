@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class ParameterListTest extends TestCase {
+
+    /** Compare to OAuth.newMap, with a mixture of repeated names. */
+    public void testSameAsNewMap() throws Exception {
+        ParameterList parameters = new ParameterList(2);
+        List<Map.Entry<String, String>> expected = new ArrayList<Map.Entry<String, String>>();
+        Map<String, String> view = parameters.asMap();
+        for (int i = 0; i < 200; ++i) {
+            String name = (i % 3 == 0) ? "oauth_nonce" : (i % 5 == 0) ? null : ("p" + (i % 37));
+            OAuth.Parameter p = new OAuth.Parameter(name, "v" + i);
+            parameters.add(p);
+            expected.add(p);
+            Map<String, String> map = OAuth.newMap(expected);
+            assertEquals(map.size(), view.size());
+            assertEquals(map, view);
+            assertEquals(map.get(name), parameters.getFirst(name));
+            assertEquals(expected, parameters);
+        }
+        assertEquals("v0", parameters.getFirst(OAuth.OAUTH_NONCE));
+        assertEquals("v1", parameters.getFirst("p1"));
+        assertEquals("v5", parameters.getFirst(null));
+        assertNull(parameters.getFirst("p37"));
+        assertNull(parameters.getFirst(OAuth.OAUTH_TOKEN));
+        assertFalse(view.containsKey(OAuth.OAUTH_TOKEN));
+        assertTrue(view.containsKey("p36"));
+        assertEquals(-1, parameters.indexOf("oauth_other"));
+    }
+
+    public void testMessage() throws Exception {
+        OAuthMessage message = new OAuthMessage("GET", "http://example.com/", OAuth.newList(
+                "a", "1", OAuth.OAUTH_TOKEN, "t"));
+        assertEquals("t", message.getToken());
+        message.addParameter("a", "2");
+        message.addParameter(OAuth.OAUTH_CONSUMER_KEY, "ck");
+        assertEquals("1", message.getParameter("a"));
+        assertEquals("ck", message.getConsumerKey());
+        assertEquals("[a=1, oauth_token=t, a=2, oauth_consumer_key=ck]", message
+                .getParameters().toString());
+        try {
+            message.getParameters().add(new OAuth.Parameter("b", "3"));
+            fail("modified the parameters");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+}
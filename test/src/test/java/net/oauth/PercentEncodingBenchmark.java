@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth;
+
+/**
+ * Compare percent encoding and decoding to the previous implementation, which
+ * examined one character at a time. The inputs are typical of OAuth: a
+ * nonce, a token and a Base64 signature. Form decoding from bytes (which
+ * scans eight bytes at a time) is compared to decoding from chars.
+ */
+public class PercentEncodingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final String[] plain = { "1272326400", "kllo9940pd9333jh", "nnch734d00sl2jdk4hf93k423kf44" };
+        final String[] signature = { "tR3+Ty81lMeYAr/Fid0kMTYa/WM=" };
+        final String formString = "oauth_token=nnch734d00sl2jdk4hf93k423kf44"
+                + "&oauth_token_secret=pfkkdhi9sl3r4s00kd94hf93k423kf44"
+                + "&oauth_callback_confirmed=true";
+        final byte[] form = formString.getBytes("US-ASCII");
+        final int iterations = 1000000;
+        Benchmark.compare(iterations, new Benchmark("percentEncode plain") {
+            protected Object run() {
+                int n = 0;
+                for (String s : plain) {
+                    n += OAuth.percentEncode(s).length();
+                }
+                return n;
+            }
+        }, new Benchmark("percentEncode plain, one at a time") {
+            protected Object run() {
+                int n = 0;
+                for (String s : plain) {
+                    n += percentEncodeOneAtATime(s).length();
+                }
+                return n;
+            }
+        }, new Benchmark("percentEncode signature") {
+            protected Object run() {
+                return OAuth.percentEncode(signature[0]);
+            }
+        }, new Benchmark("percentEncode signature, one at a time") {
+            protected Object run() {
+                return percentEncodeOneAtATime(signature[0]);
+            }
+        }, new Benchmark("decodePercent plain") {
+            protected Object run() {
+                int n = 0;
+                for (String s : plain) {
+                    n += OAuth.decodePercent(s).length();
+                }
+                return n;
+            }
+        }, new Benchmark("decodePercent plain, one at a time") {
+            protected Object run() {
+                int n = 0;
+                for (String s : plain) {
+                    n += decodePercentOneAtATime(s).length();
+                }
+                return n;
+            }
+        }, new Benchmark("decodeForm bytes") {
+            protected Object run() {
+                return OAuth.decodeForm(form, 0, form.length);
+            }
+        }, new Benchmark("decodeForm chars") {
+            protected Object run() {
+                return OAuth.decodeForm(formString);
+            }
+        });
+    }
+
+    /** The previous fast path of OAuth.percentEncode. */
+    static String percentEncodeOneAtATime(String s) {
+        final int length = s.length();
+        int i = 0;
+        while (i < length && OAuth.isUnreserved(s.charAt(i))) {
+            ++i;
+        }
+        if (i >= length) {
+            return s;
+        }
+        StringBuilder into = new StringBuilder(length + 16);
+        into.append(s, 0, i);
+        for (; i < length; ++i) {
+            char c = s.charAt(i);
+            if (OAuth.isUnreserved(c)) {
+                into.append(c);
+            } else {
+                OAuth.percentEncode(s.subSequence(i, i + 1), into);
+            }
+        }
+        return into.toString();
+    }
+
+    /** The previous fast path of OAuth.decodePercent. */
+    static String decodePercentOneAtATime(String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '%' || c == '+') {
+                return OAuth.decodePercent(s);
+            }
+        }
+        return s;
+    }
+
+}
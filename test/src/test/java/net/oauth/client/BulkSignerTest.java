@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+import net.oauth.signature.OAuthSignatureMethod;
+
+public class BulkSignerTest extends TestCase {
+
+    private static final int MAX_IN_FLIGHT = 5;
+
+    private final OAuthAccessor accessor = new OAuthAccessor(new OAuthConsumer(null,
+            "ck", "cs", null));
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        accessor.tokenSecret = "ts";
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        super.tearDown();
+    }
+
+    public void testOrder() throws Exception {
+        final List<OAuthMessage> input = new ArrayList<OAuthMessage>();
+        for (int i = 0; i < 100; ++i) {
+            input.add(new OAuthMessage("GET", "http://example.com/" + i, OAuth.newList(
+                    OAuth.OAUTH_CONSUMER_KEY, "ck", //
+                    OAuth.OAUTH_SIGNATURE_METHOD, (i % 3 == 0) ? "PLAINTEXT"
+                            : OAuth.HMAC_SHA1, //
+                    OAuth.OAUTH_TIMESTAMP, "1234567890", //
+                    OAuth.OAUTH_NONCE, "n" + i)));
+        }
+        final AtomicInteger submitted = new AtomicInteger();
+        final List<OAuthMessage> output = new ArrayList<OAuthMessage>();
+        new BulkSigner(accessor, executor, MAX_IN_FLIGHT).sign(new CountingIterator(
+                input, submitted), new BulkSigner.Receiver() {
+            public void receive(OAuthMessage signed) {
+                output.add(signed);
+                assertTrue(submitted.get() - output.size() < MAX_IN_FLIGHT);
+            }
+        });
+        assertEquals(input, output);
+        for (OAuthMessage message : output) {
+            OAuthSignatureMethod.newSigner(message, accessor).validate(message);
+        }
+    }
+
+    public void testFailure() throws Exception {
+        List<OAuthMessage> input = new ArrayList<OAuthMessage>();
+        for (int i = 0; i < 20; ++i) {
+            input.add(new OAuthMessage("GET", "http://example.com/" + i, OAuth.newList(
+                    OAuth.OAUTH_SIGNATURE_METHOD, (i == 10) ? "no such method"
+                            : OAuth.HMAC_SHA1)));
+        }
+        final List<OAuthMessage> output = new ArrayList<OAuthMessage>();
+        try {
+            new BulkSigner(accessor, null, MAX_IN_FLIGHT).sign(input.iterator(),
+                    new BulkSigner.Receiver() {
+                        public void receive(OAuthMessage signed) {
+                            output.add(signed);
+                        }
+                    });
+            fail("signed with no such method");
+        } catch (OAuthProblemException expected) {
+            assertEquals(OAuth.Problems.SIGNATURE_METHOD_REJECTED, expected.getProblem());
+        }
+        assertEquals(input.subList(0, 10), output);
+    }
+
+    private static class CountingIterator implements java.util.Iterator<OAuthMessage> {
+
+        CountingIterator(List<OAuthMessage> messages, AtomicInteger count) {
+            this.messages = messages.iterator();
+            this.count = count;
+        }
+
+        private final java.util.Iterator<OAuthMessage> messages;
+
+        private final AtomicInteger count;
+
+        public boolean hasNext() {
+            return messages.hasNext();
+        }
+
+        public OAuthMessage next() {
+            count.incrementAndGet();
+            return messages.next();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
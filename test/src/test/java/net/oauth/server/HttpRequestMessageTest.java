@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import junit.framework.TestCase;
+import net.oauth.EncodedParameter;
+import net.oauth.OAuth;
+import net.oauth.OAuthMessage;
+import net.oauth.signature.OAuthSignatureMethod;
+
+public class HttpRequestMessageTest extends TestCase {
+
+    public void testParseQuery() throws Exception {
+        List<EncodedParameter> parameters = HttpRequestMessage
+                .parseQuery("a=b%20c&d%2a=e+f&&g&h=%7E%2F");
+        assertEquals("[a=b%20c, d%2A=e%20f, g=, h=~%2F]", parameters.toString());
+        assertEquals("b c", parameters.get(0).getValue());
+        assertEquals("d*", parameters.get(1).getKey());
+        assertEquals("e f", parameters.get(1).getValue());
+        assertEquals("", parameters.get(2).getValue());
+        assertEquals("~/", parameters.get(3).getValue());
+        assertNull(HttpRequestMessage.parseQuery("a=%E3%80%81"));
+        assertNull(HttpRequestMessage.parseQuery("a=\u3001"));
+        assertNull(HttpRequestMessage.parseQuery("a=%2"));
+        assertNull(HttpRequestMessage.parseQuery("a=%G0"));
+    }
+
+    public void testCanonicalParameters() throws Exception {
+        Map<String, String[]> parameterMap = new LinkedHashMap<String, String[]>();
+        parameterMap.put("a", new String[] { "b c", "form" });
+        parameterMap.put("x", new String[] { "*" });
+        parameterMap.put("body", new String[] { "v/w" });
+        HttpServletRequest request = newRequest("POST", "a=b%20c&x=%2a", parameterMap);
+        OAuthMessage message = new HttpRequestMessage(request, "http://example.com/r");
+        assertEquals("[a=b%20c, x=%2A, a=form, body=v%2Fw]", message.getParameters().toString());
+        OAuthMessage expected = new OAuthMessage("POST", "http://example.com/r?a=b%20c&x=%2a",
+                OAuth.newList("a", "form", "body", "v/w"));
+        assertEquals(OAuthSignatureMethod.getBaseString(expected),
+                OAuthSignatureMethod.getBaseString(message));
+
+        // The container decoded the query differently:
+        parameterMap.put("x", new String[] { "?" });
+        request = newRequest("GET", "a=b%20c&x=%2a", parameterMap);
+        message = new HttpRequestMessage(request, "http://example.com/r");
+        assertEquals("[a=b%20c, a=form, x=%3F, body=v%2Fw]", message.getParameters().toString());
+    }
+
+    private static HttpServletRequest newRequest(final String method,
+            final String query, final Map<String, String[]> parameterMap) {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                HttpRequestMessageTest.class.getClassLoader(),
+                new Class[] { HttpServletRequest.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        String name = m.getName();
+                        if (name.equals("getMethod")) {
+                            return method;
+                        } else if (name.equals("getQueryString")) {
+                            return query;
+                        } else if (name.equals("getParameterMap")) {
+                            return parameterMap;
+                        } else if (name.equals("getHeaders") || name.equals("getHeaderNames")) {
+                            return Collections.enumeration(Collections.emptyList());
+                        }
+                        return null;
+                    }
+                });
+    }
+
+}
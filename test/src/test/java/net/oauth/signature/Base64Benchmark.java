@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.Random;
+
+import net.oauth.Benchmark;
+import net.oauth.CharsetCodec;
+
+/**
+ * Compare Base64Codec to the older Base64 class, encoding and decoding values
+ * the size of HMAC-SHA1 and 2048-bit RSA signatures.
+ */
+public class Base64Benchmark {
+
+    public static void main(String[] args) throws Exception {
+        for (int length : new int[] { 20, 256 }) {
+            System.out.println(length + " bytes:");
+            compare(length, 2000000 / length);
+        }
+    }
+
+    private static void compare(int length, int iterations) throws Exception {
+        final byte[] data = new byte[length];
+        new Random(1).nextBytes(data);
+        final String encoded = Base64Codec.encode(data);
+        final Base64 base64 = new Base64();
+        final char[] chars = new char[Base64Codec.encodedLength(length)];
+        final byte[] bytes = new byte[length];
+        Benchmark.compare(iterations, new Benchmark("encode, Base64Codec") {
+            protected Object run() {
+                return Base64Codec.encode(data);
+            }
+        }, new Benchmark("encode into char[], Base64Codec") {
+            protected Object run() {
+                return Base64Codec.encode(data, 0, data.length, chars, 0);
+            }
+        }, new Benchmark("encode, Base64") {
+            protected Object run() {
+                return CharsetCodec.decode(base64.encode(data), CharsetCodec.ISO_8859_1);
+            }
+        });
+        Benchmark.compare(iterations, new Benchmark("decode, Base64Codec") {
+            protected Object run() {
+                return Base64Codec.decode(encoded);
+            }
+        }, new Benchmark("decode into byte[], Base64Codec") {
+            protected Object run() {
+                return Base64Codec.decode(encoded, bytes, 0);
+            }
+        }, new Benchmark("decode, Base64") {
+            protected Object run() {
+                return base64.decode(CharsetCodec.encode(encoded, CharsetCodec.ISO_8859_1));
+            }
+        });
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class Base64CodecTest extends TestCase {
+
+    public void testRFC4648() throws Exception {
+        String[] vectors = { "", "", "f", "Zg==", "fo", "Zm8=", "foo", "Zm9v", "foob",
+                "Zm9vYg==", "fooba", "Zm9vYmE=", "foobar", "Zm9vYmFy" };
+        for (int v = 0; v < vectors.length; v += 2) {
+            byte[] data = vectors[v].getBytes("US-ASCII");
+            String encoded = vectors[v + 1];
+            assertEquals(encoded, Base64Codec.encode(data));
+            assertEquals(encoded, Base64Codec.encode(data, 0, data.length,
+                    new StringBuilder()).toString());
+            assertEquals(data.length, Base64Codec.decodedLength(encoded));
+            assertTrue(encoded, Arrays.equals(data, Base64Codec.decode(encoded)));
+        }
+    }
+
+    /** Compare to the lenient decoder, for random data of the sizes used in signatures. */
+    public void testSameAsBase64() throws Exception {
+        Random random = new Random(1);
+        for (int length = 0; length <= 520; ++length) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String expected = new String(Base64.encodeBase64(data), "ISO-8859-1");
+            assertEquals(expected, Base64Codec.encode(data));
+            char[] chars = new char[Base64Codec.encodedLength(length) + 2];
+            assertEquals(chars.length - 1, Base64Codec.encode(data, 0, length, chars, 1));
+            assertEquals(expected, new String(chars, 1, chars.length - 2));
+            StringBuilder s = new StringBuilder("x");
+            assertEquals("x" + expected, Base64Codec.encode(data, 0, length, s).toString());
+            byte[] decoded = new byte[length + 1];
+            assertEquals(length, Base64Codec.decode(expected, decoded, 1));
+            for (int i = 0; i < length; ++i) {
+                assertEquals(data[i], decoded[i + 1]);
+            }
+        }
+    }
+
+    public void testLenient() throws Exception {
+        String[] lenient = { "Zm9v\r\nYmFy", "Zm9vYmFy\n", "Zm9v YmFy", "Zm9vYg==Zm9v",
+                "Zm9v\u00e9YmFy", "Zg=A", "====" };
+        for (String encoded : lenient) {
+            assertEquals(encoded, -1, Base64Codec.decode(encoded, new byte[10], 0));
+            byte[] expected = Base64.decodeBase64(encoded.getBytes("ISO-8859-1"));
+            assertTrue(encoded, Arrays.equals(expected, Base64Codec.decode(encoded)));
+        }
+        assertEquals("foobar", new String(Base64Codec.decode("Zm9v\r\nYmFy"), "US-ASCII"));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import net.oauth.Benchmark;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+
+/**
+ * Compare the throughput of Ed25519 to RSA-SHA1 with a 2048-bit key, for
+ * signing and verification of a typical base string. This requires a Java
+ * runtime that supports Ed25519 (Java 15 or later).
+ */
+public class Ed25519Benchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (!Ed25519.isSupported()) {
+            System.out.println("This Java runtime doesn't support Ed25519.");
+            return;
+        }
+        final String baseString = "GET&http%3A%2F%2Fphotos.example.net%2Fphotos&"
+                + "file%3Dvacation.jpg%26oauth_consumer_key%3Ddpf43f3p2l4k3l03"
+                + "%26oauth_nonce%3Dkllo9940pd9333jh%26oauth_signature_method"
+                + "%3DRSA-SHA1%26oauth_timestamp%3D1191242096%26oauth_token"
+                + "%3Dnnch734d00sl2jdk%26oauth_version%3D1.0%26size%3Doriginal";
+        final OAuthSignatureMethod rsa = newMethod(OAuth.RSA_SHA1, "RSA", 2048,
+                RSA_SHA1.PRIVATE_KEY, RSA_SHA1.PUBLIC_KEY);
+        final OAuthSignatureMethod ed = newMethod(OAuth.ED25519, "Ed25519", 0,
+                Ed25519.PRIVATE_KEY, Ed25519.PUBLIC_KEY);
+        final String rsaSignature = rsa.getSignature(baseString);
+        final String edSignature = ed.getSignature(baseString);
+        Benchmark.compare(500, new Benchmark("sign, RSA-SHA1 2048") {
+            protected Object run() throws Exception {
+                return rsa.getSignature(baseString);
+            }
+        }, new Benchmark("sign, Ed25519") {
+            protected Object run() throws Exception {
+                return ed.getSignature(baseString);
+            }
+        });
+        Benchmark.compare(5000, new Benchmark("verify, RSA-SHA1 2048") {
+            protected Object run() throws Exception {
+                return rsa.isValid(rsaSignature, baseString);
+            }
+        }, new Benchmark("verify, Ed25519") {
+            protected Object run() throws Exception {
+                return ed.isValid(edSignature, baseString);
+            }
+        });
+    }
+
+    private static OAuthSignatureMethod newMethod(String name, String keyAlgorithm,
+            int bits, String privateKeyProperty, String publicKeyProperty)
+            throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+        if (bits > 0) {
+            generator.initialize(bits);
+        }
+        KeyPair keys = generator.generateKeyPair();
+        OAuthConsumer consumer = new OAuthConsumer(null, "consumer", null, null);
+        consumer.setProperty(privateKeyProperty, keys.getPrivate());
+        consumer.setProperty(publicKeyProperty, keys.getPublic());
+        return OAuthSignatureMethod.newMethod(name, new OAuthAccessor(consumer));
+    }
+
+}
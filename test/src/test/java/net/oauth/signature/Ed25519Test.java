@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+import junit.framework.TestCase;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+
+/**
+ * Tests of the Ed25519 signature method, which do nothing unless the Java
+ * runtime supports Ed25519.
+ */
+public class Ed25519Test extends TestCase {
+
+    /** Test 1 from RFC 8032 section 7.1, with the keys encoded in DER. */
+    private static final String PRIVATE_KEY = "302e020100300506032b657004220420"
+            + "9d61b19deffd5a60ba844af492ec2cc44449c5697b326919703bac031cae7f60";
+    private static final String PUBLIC_KEY = "302a300506032b6570032100"
+            + "d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a";
+    private static final String SIGNATURE = "e5564300c360ac729086e2cc806e828a"
+            + "84877f1eb8e5d974d873e065224901555fb8821590a33bacc61e39701cf9b4"
+            + "6bd25bf5f0595bbe24655141438e7a100b";
+
+    public void testRegistered() {
+        assertEquals(Ed25519.isSupported(), OAuthSignatureMethod.getMethodNames()
+                .contains(OAuth.ED25519));
+    }
+
+    public void testVector() throws Exception {
+        if (!Ed25519.isSupported()) {
+            return;
+        }
+        OAuthConsumer consumer = new OAuthConsumer(null, "ck", null, null);
+        consumer.setProperty(Ed25519.PRIVATE_KEY, fromHex(PRIVATE_KEY));
+        consumer.setProperty(Ed25519.PUBLIC_KEY, fromHex(PUBLIC_KEY));
+        OAuthSignatureMethod method = OAuthSignatureMethod.newMethod(OAuth.ED25519,
+                new OAuthAccessor(consumer));
+        String expected = OAuthSignatureMethod.base64Encode(fromHex(SIGNATURE));
+        assertEquals(expected, method.getSignature(""));
+        assertTrue(method.isValid(expected, ""));
+        assertFalse(method.isValid(expected, "x"));
+    }
+
+    public void testSignVerify() throws Exception {
+        if (!Ed25519.isSupported()) {
+            return;
+        }
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("Ed25519");
+        KeyPair keys = generator.generateKeyPair();
+        OAuthConsumer client = new OAuthConsumer(null, "ck", null, null);
+        client.setProperty(Ed25519.PRIVATE_KEY, toPEM("PRIVATE KEY", keys.getPrivate()
+                .getEncoded()));
+        client.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.ED25519);
+        OAuthConsumer server = new OAuthConsumer(null, "ck", null, null);
+        server.setProperty(Ed25519.PUBLIC_KEY, toPEM("PUBLIC KEY", keys.getPublic()
+                .getEncoded()));
+        OAuthMessage message = new OAuthAccessor(client).newRequestMessage("POST",
+                "http://example.com/resource?a=b", OAuth.newList("c", "d"));
+        assertEquals(OAuth.ED25519, message.getSignatureMethod());
+        OAuthSignatureMethod.getSigner(message, new OAuthAccessor(server)).validate(message);
+        message.addParameter("e", "f");
+        try {
+            OAuthSignatureMethod.getSigner(message, new OAuthAccessor(server)).validate(message);
+            fail("validated a modified message");
+        } catch (OAuthProblemException expected) {
+            assertEquals("signature_invalid", expected.getProblem());
+        }
+    }
+
+    static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    static String toPEM(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n" + OAuthSignatureMethod.base64Encode(der)
+                + "\n-----END " + type + "-----\n";
+    }
+
+}
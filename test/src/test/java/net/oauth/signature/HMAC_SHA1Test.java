@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+
+public class HMAC_SHA1Test extends TestCase {
+
+    public void testKey() throws Exception {
+        OAuthSignatureMethod first = newMethod("HMAC_SHA1Test", "ts");
+        assertEquals("VZVjXceV7JgPq/dOTnNmEfO0Fv8=", newMethod("cs", "ts")
+                .getSignature("bs"));
+        String signature = first.getSignature("bs");
+        assertEquals(signature, first.getSignature("bs"));
+        OAuthSignatureMethod second = newMethod("HMAC_SHA1Test", "ts");
+        assertEquals(signature, second.getSignature("bs"));
+        assertTrue(second.isValid(signature, "bs"));
+        // Changing a secret changes the key:
+        second.setTokenSecret("other");
+        assertFalse(signature.equals(second.getSignature("bs")));
+        assertFalse(second.isValid(signature, "bs"));
+    }
+
+    public void testConcurrent() throws Exception {
+        final OAuthSignatureMethod method = newMethod("cs", "ts");
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; ++i) {
+                            assertEquals("VZVjXceV7JgPq/dOTnNmEfO0Fv8=", method
+                                    .getSignature("bs"));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(failures.toString(), 0, failures.size());
+    }
+
+    private static OAuthSignatureMethod newMethod(String consumerSecret,
+            String tokenSecret) throws Exception {
+        OAuthConsumer consumer = new OAuthConsumer(null, null, consumerSecret, null);
+        OAuthSignatureMethod method = OAuthSignatureMethod.newMethod("HMAC-SHA1",
+                new OAuthAccessor(consumer));
+        method.setTokenSecret(tokenSecret);
+        return method;
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import junit.framework.TestCase;
+import net.oauth.OAuthMessage;
+
+public class LRUCacheTest extends TestCase {
+
+    public void testEviction() {
+        LRUCache<String, String> cache = new LRUCache<String, String>(2, 1);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C"); // evicts b, the least recently used
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.resetStatistics();
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testStripes() {
+        LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(64);
+        for (int i = 0; i < 1000; ++i) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(Integer.valueOf(999), cache.get(999));
+    }
+
+    public void testPrefixCache() throws Exception {
+        final String url = "http://Example.com:80/LRUCacheTest";
+        long hits = OAuthSignatureMethod.getPrefixCache().getHits();
+        String expected = "GET&http%3A%2F%2Fexample.com%2FLRUCacheTest&a%3Db";
+        for (int i = 0; i < 2; ++i) {
+            OAuthMessage message = new OAuthMessage("get", url + "?a=b", null);
+            assertEquals(expected, OAuthSignatureMethod.getBaseString(message));
+        }
+        assertTrue(OAuthSignatureMethod.getPrefixCache().getHits() > hits);
+    }
+
+}
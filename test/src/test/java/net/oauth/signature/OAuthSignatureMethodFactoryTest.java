@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+
+public class OAuthSignatureMethodFactoryTest extends TestCase {
+
+    public void testStandard() throws Exception {
+        assertEquals(0, OAuthSignatureMethod.getLoadFailures().size());
+        Collection<String> names = OAuthSignatureMethod.getMethodNames();
+        for (String name : new String[] { "HMAC-SHA1", "PLAINTEXT", "RSA-SHA1",
+                "HMAC-SHA1-Accessor", "PLAINTEXT-Accessor" }) {
+            assertTrue(name, names.contains(name));
+        }
+        OAuthSignatureMethod method = OAuthSignatureMethod.newMethod("PLAINTEXT",
+                new OAuthAccessor(new OAuthConsumer(null, null, "cs", null)));
+        assertEquals("PLAINTEXT", method.getName());
+        assertEquals("cs&", method.getSignature("bs"));
+        try {
+            OAuthSignatureMethod.newMethod("no such method", new OAuthAccessor(null));
+            fail();
+        } catch (OAuthProblemException expected) {
+            assertEquals(OAuth.Problems.SIGNATURE_METHOD_REJECTED, expected.getProblem());
+        }
+    }
+
+    public void testRegister() throws Exception {
+        OAuthAccessor accessor = new OAuthAccessor(new OAuthConsumer(null, null, "cs", null));
+        OAuthSignatureMethod.registerMethodFactory(new Reversed());
+        try {
+            assertTrue(OAuthSignatureMethod.getMethodNames().contains(Reversed.NAME));
+            assertEquals("sb", OAuthSignatureMethod.newMethod(Reversed.NAME, accessor)
+                    .getSignature("bs"));
+        } finally {
+            OAuthSignatureMethod.unregisterMethod(Reversed.NAME);
+        }
+        assertFalse(OAuthSignatureMethod.getMethodNames().contains(Reversed.NAME));
+        OAuthSignatureMethod.registerMethodClass("Reversed-Class", Reversed.Method.class);
+        try {
+            assertEquals("sb", OAuthSignatureMethod.newMethod("Reversed-Class", accessor)
+                    .getSignature("bs"));
+        } finally {
+            OAuthSignatureMethod.registerMethodClass("Reversed-Class", null);
+        }
+        assertFalse(OAuthSignatureMethod.getMethodNames().contains("Reversed-Class"));
+    }
+
+    public void testLoadFactories() throws Exception {
+        File dir = File.createTempFile("OAuthSignatureMethodFactoryTest", "");
+        dir.delete();
+        File services = new File(dir, "META-INF/services");
+        services.mkdirs();
+        File list = new File(services, OAuthSignatureMethodFactory.class.getName());
+        OutputStream out = new FileOutputStream(list);
+        out.write(("# test\n no.such.Class\n" + Reversed.class.getName() + " # comment\n")
+                .getBytes("UTF-8"));
+        out.close();
+        try {
+            ClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() },
+                    getClass().getClassLoader());
+            List<Exception> failures = OAuthSignatureMethod.loadMethodFactories(loader);
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(0).getMessage(),
+                    failures.get(0).getMessage().endsWith(": no.such.Class"));
+            assertTrue(OAuthSignatureMethod.getMethodNames().contains(Reversed.NAME));
+        } finally {
+            OAuthSignatureMethod.unregisterMethod(Reversed.NAME);
+            list.delete();
+            services.delete();
+            services.getParentFile().delete();
+            dir.delete();
+        }
+    }
+
+    public void testGetSigner() throws Exception {
+        OAuthAccessor accessor = new OAuthAccessor(new OAuthConsumer(null, "ck", "cs", null));
+        accessor.tokenSecret = "ts";
+        OAuthMessage message = new OAuthMessage("GET", "http://example.com/", OAuth.newList(
+                OAuth.OAUTH_SIGNATURE_METHOD, "HMAC-SHA1"));
+        OAuthSignatureMethod signer = OAuthSignatureMethod.getSigner(message, accessor);
+        assertSame(signer, accessor.getSigner());
+        assertSame(signer, OAuthSignatureMethod.getSigner(message, accessor));
+        assertEquals("VZVjXceV7JgPq/dOTnNmEfO0Fv8=", signer.getSignature("bs"));
+        try {
+            signer.setTokenSecret("other");
+            fail("changed a shared signer");
+        } catch (IllegalStateException expected) {
+        }
+        // A different token secret or signature method gets a different signer:
+        accessor.tokenSecret = "other";
+        OAuthSignatureMethod other = OAuthSignatureMethod.getSigner(message, accessor);
+        assertNotSame(signer, other);
+        assertEquals("other", other.getTokenSecret());
+        message = new OAuthMessage("GET", "http://example.com/", OAuth.newList(
+                OAuth.OAUTH_SIGNATURE_METHOD, "PLAINTEXT"));
+        assertEquals("PLAINTEXT", OAuthSignatureMethod.getSigner(message, accessor).getName());
+        // Setting a property discards the cached signer:
+        accessor.setProperty("p", "v");
+        assertNull(accessor.getSigner());
+        assertNull(accessor.clone().getSigner());
+        signer = OAuthSignatureMethod.getSigner(message, accessor);
+        accessor.consumer.setProperty("p", "v");
+        assertNotSame(signer, OAuthSignatureMethod.getSigner(message, accessor));
+        // newSigner constructs an object that can be changed:
+        OAuthSignatureMethod.newSigner(message, accessor).setTokenSecret("ts");
+        // A class registered by registerMethodClass isn't shared:
+        OAuthSignatureMethod.registerMethodClass("Reversed-Class", Reversed.Method.class);
+        try {
+            message = new OAuthMessage("GET", "http://example.com/", OAuth.newList(
+                    OAuth.OAUTH_SIGNATURE_METHOD, "Reversed-Class"));
+            signer = OAuthSignatureMethod.getSigner(message, accessor);
+            assertNotSame(signer, OAuthSignatureMethod.getSigner(message, accessor));
+            signer.setTokenSecret("ts");
+        } finally {
+            OAuthSignatureMethod.registerMethodClass("Reversed-Class", null);
+        }
+    }
+
+    /** A trivial signature method, for testing. */
+    public static class Reversed implements OAuthSignatureMethodFactory {
+
+        static final String NAME = "Reversed";
+
+        public Collection<String> getMethodNames() {
+            return Collections.singleton(NAME);
+        }
+
+        public OAuthSignatureMethod newInstance(String name) {
+            return new Method();
+        }
+
+        public static class Method extends OAuthSignatureMethod {
+
+            @Override
+            protected String getSignature(String baseString) {
+                return new StringBuilder(baseString).reverse().toString();
+            }
+
+            @Override
+            protected boolean isValid(String signature, String baseString) {
+                return equals(getSignature(baseString), signature);
+            }
+        }
+    }
+
+}
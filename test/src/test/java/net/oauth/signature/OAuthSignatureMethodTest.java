@@ -16,7 +16,10 @@
 
 package net.oauth.signature;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import junit.framework.TestCase;
 import net.oauth.OAuth;
 import net.oauth.OAuthAccessor;
@@ -52,6 +55,28 @@ public class OAuthSignatureMethodTest extends TestCase {
         }
     }
 
+    public void testNormalizeMany() throws Exception {
+        Random random = new Random(8);
+        for (int size : new int[] { 2, 7, 8, 9, 30, 100 }) {
+            List<OAuth.Parameter> parameters = new ArrayList<OAuth.Parameter>();
+            List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < size; ++i) {
+                String name = "n" + (char) ('!' + random.nextInt(0x60));
+                String value = (random.nextInt(4) == 0) ? "" : ("\u00e9" + random.nextInt(size));
+                parameters.add(new OAuth.Parameter(name, value));
+                expected.add(OAuth.percentEncode(name) + " " + OAuth.percentEncode(value));
+            }
+            Collections.sort(expected);
+            String form = OAuth.formEncode(ParameterNormalizer.sort(parameters));
+            assertEquals("size " + size, expected.toString(),
+                    "[" + form.replace('=', ' ').replace("&", ", ") + "]");
+            // already sorted:
+            assertEquals(form, OAuthSignatureMethod.normalizeParameters(OAuth.decodeForm(form)));
+            Collections.reverse(parameters);
+            assertEquals(form, OAuthSignatureMethod.normalizeParameters(parameters));
+        }
+    }
+
     private static final String OAUTH_A_BASE_STRING = "GET&http%3A%2F%2Fphotos.example.net%2Fphotos&"
             + "file%3Dvacation.jpg%26oauth_consumer_key%3Ddpf43f3p2l4k3l03%26oauth_nonce%3Dkllo9940pd9333jh%26oauth_signature_method%3DHMAC-SHA1%26oauth_timestamp%3D1191242096%26oauth_token%3Dnnch734d00sl2jdk%26oauth_version%3D1.0%26size%3Doriginal";
 
@@ -79,7 +104,11 @@ public class OAuthSignatureMethodTest extends TestCase {
                     "GET",
                     "http://photos.example.net/photos",
                     "file=vacation.jpg&size=original&oauth_version=1.0&oauth_consumer_key=dpf43f3p2l4k3l03&oauth_token=nnch734d00sl2jdk&oauth_timestamp=1191242096&oauth_nonce=kllo9940pd9333jh&oauth_signature=ignored&oauth_signature_method=HMAC-SHA1",
-                    "kd94hf93k423kf44", "pfkkdhi9sl3r4s00", OAUTH_A_BASE_STRING } };
+                    "kd94hf93k423kf44", "pfkkdhi9sl3r4s00", OAUTH_A_BASE_STRING },
+            { "escaped", "HMAC-SHA1", "POST", "http://example.com/a?q=x%20y",
+                    "n=a%26b&m=%E3%80%81", "cs", "ts",
+                    "POST&http%3A%2F%2Fexample.com%2Fa&"
+                            + "m%3D%25E3%2580%2581%26n%3Da%2526b%26q%3Dx%2520y" } };
 
     public void testGetBaseString() throws Exception {
         for (int c = 0; c < BASES.length;) {
@@ -98,9 +127,15 @@ public class OAuthSignatureMethodTest extends TestCase {
                             consumerSecret, null)));
             method.setTokenSecret(tokenSecret);
             List<OAuth.Parameter> parameters = OAuth.decodeForm(form);
-            String actual = OAuthSignatureMethod
-                    .getBaseString(new OAuthMessage(httpMethod, URL, parameters));
+            OAuthMessage message = new OAuthMessage(httpMethod, URL, parameters);
+            String actual = OAuthSignatureMethod.getBaseString(message);
             assertEquals(label, expected, actual);
+            SignatureBaseString baseString = OAuthSignatureMethod.newBaseString(message);
+            assertEquals(label, expected.length(), baseString.length());
+            assertEquals(label, expected, baseString.toString());
+            String signature = method.getSignature(expected);
+            assertEquals(label, signature, method.getSignature(baseString));
+            assertTrue(label, method.isValid(signature, baseString));
         }
 
         OAuthMessage message = new OAuthMessage("GET",
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+
+public class PublicKeyRepositoryTest extends TestCase {
+
+    private KeyPair[] keys;
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        keys = new KeyPair[3];
+        for (int k = 0; k < keys.length; ++k) {
+            keys[k] = generator.generateKeyPair();
+        }
+        dir = File.createTempFile("PublicKeyRepositoryTest", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testDirectory() throws Exception {
+        write(new File(dir, "c0.pem"), publicKeyPEM(0));
+        write(new File(dir, "c1.pem"), publicKeyPEM(1));
+        write(new File(dir, "bad.pem"), "-----BEGIN PUBLIC KEY-----\nAAAA\n-----END PUBLIC KEY-----\n");
+        write(new File(dir, "ignored.txt"), publicKeyPEM(2));
+        check(PublicKeyRepository.fromDirectory(dir, "RSA", 10));
+    }
+
+    public void testBundle() throws Exception {
+        File bundle = new File(dir, "bundle");
+        write(bundle, "# partner keys\n" //
+                + "oauth_consumer_key: c1\n" + publicKeyPEM(2) // replaced below
+                + "oauth_consumer_key: bad\n"
+                + "-----BEGIN PUBLIC KEY-----\nAAAA\n-----END PUBLIC KEY-----\n"
+                + "oauth_consumer_key: c0\n" + publicKeyPEM(0) //
+                + "\noauth_consumer_key: c1\r\n" + publicKeyPEM(1));
+        check(PublicKeyRepository.fromBundle(bundle, "RSA", 10));
+        write(bundle, "-----BEGIN PUBLIC KEY-----\n");
+        try {
+            PublicKeyRepository.fromBundle(bundle, "RSA", 10);
+            fail("indexed a block with no consumer key");
+        } catch (IOException expected) {
+        }
+    }
+
+    private void check(PublicKeyRepository repository) throws Exception {
+        assertEquals(Arrays.asList("bad", "c0", "c1"), repository.getConsumerKeys());
+        assertTrue(repository.contains("c0"));
+        assertFalse(repository.contains("c2"));
+        assertEquals(0, repository.getCache().size());
+        assertNull(repository.getPublicKey("c2"));
+        assertEquals(keys[0].getPublic(), repository.getPublicKey("c0"));
+        assertEquals(keys[1].getPublic(), repository.getPublicKey("c1"));
+        assertEquals(keys[1].getPublic(), repository.getPublicKey("c1"));
+        assertEquals(2, repository.getCache().size());
+        assertEquals(1, repository.getCache().getHits());
+        try {
+            repository.getPublicKey("bad");
+            fail("parsed a bad key");
+        } catch (OAuthException expected) {
+        }
+        // Verify signatures, using the repository as the public key:
+        for (int k = 0; k < 2; ++k) {
+            OAuthConsumer client = new OAuthConsumer(null, "c" + k, null, null);
+            client.setProperty(RSA_SHA1.PRIVATE_KEY, keys[k].getPrivate());
+            client.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+            OAuthMessage message = new OAuthAccessor(client).newRequestMessage("GET",
+                    "http://example.com/", null);
+            OAuthConsumer server = new OAuthConsumer(null, "c" + k, null, null);
+            server.setProperty(RSA_SHA1.PUBLIC_KEY, repository);
+            OAuthSignatureMethod.newSigner(message, new OAuthAccessor(server)).validate(message);
+        }
+        // A consumer that's not in the repository is unknown:
+        OAuthConsumer client = new OAuthConsumer(null, "c2", null, null);
+        client.setProperty(RSA_SHA1.PRIVATE_KEY, keys[0].getPrivate());
+        client.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+        OAuthMessage message = new OAuthAccessor(client).newRequestMessage("GET",
+                "http://example.com/", null);
+        OAuthConsumer server = new OAuthConsumer(null, "c2", null, null);
+        server.setProperty(RSA_SHA1.PUBLIC_KEY, repository);
+        try {
+            OAuthSignatureMethod.newSigner(message, new OAuthAccessor(server)).validate(message);
+            fail("verified an unknown consumer");
+        } catch (OAuthProblemException expected) {
+            assertEquals(OAuth.Problems.CONSUMER_KEY_UNKNOWN, expected.getProblem());
+        }
+    }
+
+    private String publicKeyPEM(int k) {
+        return Ed25519Test.toPEM("PUBLIC KEY", keys[k].getPublic().getEncoded());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+
+}
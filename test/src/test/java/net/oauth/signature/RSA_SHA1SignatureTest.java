@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.security.Key;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -305,4 +306,47 @@ public class RSA_SHA1SignatureTest extends TestCase {
         OAuthAccessor accessor2 = new OAuthAccessor(serverX509PemCert);
         doTests(message, accessor1, accessor2);
     }
+
+    public void testKeyCache() throws Exception {
+        serverPemKey.setProperty(RSA_SHA1.PUBLIC_KEY, PUBLIC_KEY);
+        assertNull(serverPemKey.getParsedKey(RSA_SHA1.PUBLIC_KEY));
+        testSignVerifyPem();
+        Key key = serverPemKey.getParsedKey(RSA_SHA1.PUBLIC_KEY);
+        assertNotNull(key);
+        testSignVerifyPem();
+        // The second round used the key parsed by the first:
+        assertSame(key, serverPemKey.getParsedKey(RSA_SHA1.PUBLIC_KEY));
+        // A stale key can't be cached:
+        int version = serverPemKey.getPropertiesVersion();
+        serverPemKey.setProperty("unrelated", "value");
+        assertNull(serverPemKey.getParsedKey(RSA_SHA1.PUBLIC_KEY));
+        serverPemKey.setParsedKey(RSA_SHA1.PUBLIC_KEY, key, version);
+        assertNull(serverPemKey.getParsedKey(RSA_SHA1.PUBLIC_KEY));
+        // A new value isn't confused with the old one:
+        serverPemKey.setProperty(RSA_SHA1.PUBLIC_KEY, "not a key");
+        try {
+            OAuthSignatureMethod.newMethod(OAuth.RSA_SHA1, new OAuthAccessor(serverPemKey));
+            fail("accepted a bad key");
+        } catch (OAuthException expected) {
+        }
+    }
+
+    public void testRepeatedUse() throws Exception {
+        OAuthAccessor client = new OAuthAccessor(clientJceKey);
+        OAuthAccessor server = new OAuthAccessor(serverJceKey);
+        RSA_SHA1 signer = (RSA_SHA1) OAuthSignatureMethod.newMethod(OAuth.RSA_SHA1, client);
+        RSA_SHA1 verifier = (RSA_SHA1) OAuthSignatureMethod.newMethod(OAuth.RSA_SHA1, server);
+        String signature = signer.getSignature("base string");
+        assertEquals(signature, signer.getSignature("base string"));
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(verifier.isValid(signature, "base string"));
+            assertFalse(verifier.isValid(signature, "other string"));
+        }
+        // A failed verification doesn't affect the next one:
+        try {
+            verifier.isValid("AAAA", "base string");
+        } catch (OAuthException ignored) {
+        }
+        assertTrue(verifier.isValid(signature, "base string"));
+    }
 }
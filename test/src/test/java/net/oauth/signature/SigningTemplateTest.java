@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.util.List;
+import junit.framework.TestCase;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+
+public class SigningTemplateTest extends TestCase {
+
+    public void testSign() throws Exception {
+        OAuthConsumer consumer = new OAuthConsumer(null, "dpf43f3p2l4k3l03",
+                "kd94hf93k423kf44", null);
+        OAuthAccessor accessor = new OAuthAccessor(consumer);
+        accessor.accessToken = "nnch734d00sl2jdk";
+        accessor.tokenSecret = "pfkkdhi9sl3r4s00";
+        SigningTemplate template = new SigningTemplate(accessor, "GET",
+                "http://photos.example.net/photos?size=original",
+                OAuth.newList("file", "vacation.jpg"));
+        // From the example in the OAuth Core 1.0 specification:
+        List<OAuth.Parameter> varying = OAuth.newList(OAuth.OAUTH_NONCE,
+                "kllo9940pd9333jh", OAuth.OAUTH_TIMESTAMP, "1191242096");
+        SigningTemplate.Signed signed = template.sign(varying);
+        assertEquals("tR3+Ty81lMeYAr/Fid0kMTYa/WM=", signed.getSignature());
+        assertEquals("OAuth realm=\"R\", oauth_token=\"nnch734d00sl2jdk\","
+                + " oauth_consumer_key=\"dpf43f3p2l4k3l03\","
+                + " oauth_signature_method=\"HMAC-SHA1\", oauth_version=\"1.0\","
+                + " oauth_nonce=\"kllo9940pd9333jh\", oauth_timestamp=\"1191242096\","
+                + " oauth_signature=\"tR3%2BTy81lMeYAr%2FFid0kMTYa%2FWM%3D\"",
+                signed.getAuthorizationHeader("R"));
+        OAuthMessage message = signed.toMessage();
+        assertEquals(message.getAuthorizationHeader("R"), signed.getAuthorizationHeader("R"));
+        assertEquals(message.getAuthorizationHeader(null), signed.getAuthorizationHeader(null));
+        assertEquals(OAuth.formEncode(message.getParameters()), signed.getQueryString());
+        assertEquals(OAuth.addParameters(message.URL, message.getParameters()), signed.getURL());
+        OAuthSignatureMethod.newSigner(message, accessor).validate(message);
+
+        for (int i = 0; i < 2; ++i) {
+            message = template.sign(OAuth.newList("n", "v" + i)).toMessage();
+            OAuthSignatureMethod.newSigner(message, accessor).validate(message);
+        }
+    }
+
+    public void testVaryingParameterRejected() throws Exception {
+        OAuthAccessor accessor = new OAuthAccessor(new OAuthConsumer(null, "k", "s", null));
+        try {
+            new SigningTemplate(accessor, "GET", "http://example.net/",
+                    OAuth.newList(OAuth.OAUTH_NONCE, "n"));
+            fail("accepted a fixed oauth_nonce");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new SigningTemplate(accessor, "GET", "http://example.net/?oauth_timestamp=1", null);
+            fail("accepted a fixed oauth_timestamp");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
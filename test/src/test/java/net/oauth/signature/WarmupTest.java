@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.oauth.signature;
+
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+import net.oauth.ConsumerProperties;
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+
+public class WarmupTest extends TestCase {
+
+    public void testRun() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("hmac.consumerKey", "hk");
+        p.setProperty("hmac.consumerSecret", "hs");
+        p.setProperty("rsa.consumerKey", "rk");
+        p.setProperty("rsa.consumer." + OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+        p.setProperty("rsa.consumer." + RSA_SHA1.PRIVATE_KEY, Ed25519Test.toPEM("PRIVATE KEY",
+                KeyPairGenerator.getInstance("RSA").generateKeyPair().getPrivate()
+                        .getEncoded()));
+        p.setProperty("bad.consumerKey", "bk");
+        p.setProperty("bad.consumer." + OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+        p.setProperty("bad.consumer." + RSA_SHA1.PRIVATE_KEY, "not a key");
+        ConsumerProperties consumers = new ConsumerProperties(p);
+        assertEquals(Arrays.asList("bad", "hmac", "rsa"), new ArrayList<String>(
+                consumers.getConsumerNames()));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Warmup warmup;
+        try {
+            warmup = Warmup.run(consumers, executor);
+        } finally {
+            executor.shutdown();
+        }
+        Map<String, Warmup.Step> steps = new HashMap<String, Warmup.Step>();
+        for (Warmup.Step step : warmup.getSteps()) {
+            steps.put(step.getName(), step);
+        }
+        for (String name : OAuthSignatureMethod.getMethodNames()) {
+            assertNull(name, steps.get("method " + name).getException());
+        }
+        assertNull(steps.get("Mac HmacSHA1").getException());
+        assertNull(steps.get("KeyFactory RSA").getException());
+        assertNull(steps.get("consumer hmac").getException());
+        assertNull(steps.get("consumer rsa").getException());
+        assertEquals(1, warmup.getFailures().size());
+        assertSame(steps.get("consumer bad"), warmup.getFailures().get(0));
+        assertTrue(warmup.toString(), warmup.toString().contains("1 failed"));
+    }
+
+    public void testRejected() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        executor.shutdown();
+        Warmup warmup = new Warmup(executor);
+        warmup.warmUpProviders();
+        assertNull(warmup.toString(), getStep(warmup, "Mac HmacSHA1").getException());
+        assertEquals(0, warmup.getFailures().size());
+    }
+
+    private static Warmup.Step getStep(Warmup warmup, String name) {
+        for (Warmup.Step step : warmup.getSteps()) {
+            if (name.equals(step.getName())) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    public void testWarmUpAccessors() throws Exception {
+        OAuthConsumer consumer = new OAuthConsumer(null, "rk", null, null);
+        consumer.setProperty(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1);
+        consumer.setProperty(RSA_SHA1.PRIVATE_KEY, KeyPairGenerator.getInstance("RSA")
+                .generateKeyPair().getPrivate().getEncoded());
+        OAuthAccessor accessor = new OAuthAccessor(consumer);
+        Warmup warmup = new Warmup(null);
+        warmup.warmUpAccessors(Collections.singletonList(accessor));
+        assertEquals(warmup.toString(), 0, warmup.getFailures().size());
+        assertEquals("consumer rk", warmup.getSteps().get(0).getName());
+        OAuthMessage message = new OAuthMessage(null, null, OAuth.newList(
+                OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1));
+        OAuthSignatureMethod signer = OAuthSignatureMethod.getSigner(message, accessor);
+        assertSame(signer, accessor.getSigner());
+        assertSame(signer, OAuthSignatureMethod.getSigner(message, accessor));
+    }
+
+}